@@ -25,13 +25,17 @@
 package org.mytoptag;
 
 import org.springframework.beans.factory.annotation.Configurable;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.context.annotation.Bean;
+import org.springframework.core.task.AsyncTaskExecutor;
 import org.springframework.core.task.TaskExecutor;
 import org.springframework.scheduling.annotation.EnableAsync;
 import org.springframework.scheduling.annotation.EnableScheduling;
 import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.web.servlet.config.annotation.AsyncSupportConfigurer;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
 
 /**
  *  Main app class.
@@ -40,7 +44,7 @@ import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 @EnableScheduling
 @Configurable
 @EnableAsync
-public class MyTopTag {
+public class MyTopTag implements WebMvcConfigurer {
 
   private static final Integer TPTE_CORE_POOL_SIZE = 3;
 
@@ -48,6 +52,21 @@ public class MyTopTag {
 
   private static final Integer TPTE_MAX_QUEUE_CAPACITY = 600;
 
+  private static final Integer SUGGESTION_POOL_SIZE = 8;
+
+  private static final Integer SUGGESTION_QUEUE_CAPACITY = 100;
+
+  private static final Integer INSTAGRAM_POOL_SIZE = 10;
+
+  private static final Integer INSTAGRAM_QUEUE_CAPACITY = 1000;
+
+  private static final Integer MVC_POOL_SIZE = 4;
+
+  private static final Integer MVC_QUEUE_CAPACITY = 20;
+
+  @Value("${spring.mvc.async.request-timeout:30000}")
+  private Long asyncRequestTimeout;
+
   /**
    * Main method.
    *
@@ -73,4 +92,64 @@ public class MyTopTag {
     return threadPoolTaskExecutor;
   }
 
+  /**
+   * Suggestion lookup executor. Requests beyond its queue are rejected instead of piling up.
+   *
+   * @return thread pool task executor
+   */
+  @Bean(name = "suggestionExecutor")
+  public TaskExecutor suggestionExecutor() {
+    final ThreadPoolTaskExecutor threadPoolTaskExecutor = new ThreadPoolTaskExecutor();
+    threadPoolTaskExecutor.setThreadNamePrefix("Suggestion-");
+    threadPoolTaskExecutor.setCorePoolSize(SUGGESTION_POOL_SIZE);
+    threadPoolTaskExecutor.setMaxPoolSize(SUGGESTION_POOL_SIZE);
+    threadPoolTaskExecutor.setQueueCapacity(SUGGESTION_QUEUE_CAPACITY);
+    threadPoolTaskExecutor.afterPropertiesSet();
+    return threadPoolTaskExecutor;
+  }
+
+  /**
+   * Instagram fetch executor. Threads mostly wait for network, request rate is limited by the http client.
+   *
+   * @return thread pool task executor
+   */
+  @Bean(name = "instagramExecutor")
+  public TaskExecutor instagramExecutor() {
+    final ThreadPoolTaskExecutor threadPoolTaskExecutor = new ThreadPoolTaskExecutor();
+    threadPoolTaskExecutor.setThreadNamePrefix("Instagram-");
+    threadPoolTaskExecutor.setCorePoolSize(INSTAGRAM_POOL_SIZE);
+    threadPoolTaskExecutor.setMaxPoolSize(INSTAGRAM_POOL_SIZE);
+    threadPoolTaskExecutor.setQueueCapacity(INSTAGRAM_QUEUE_CAPACITY);
+    threadPoolTaskExecutor.afterPropertiesSet();
+    return threadPoolTaskExecutor;
+  }
+
+  /**
+   * Executor of async MVC handlers such as streamed responses. Streamed responses hold
+   * a database connection while the client reads, so it is kept smaller than the connection pool.
+   *
+   * @return thread pool task executor
+   */
+  @Bean(name = "mvcExecutor")
+  public AsyncTaskExecutor mvcExecutor() {
+    final ThreadPoolTaskExecutor threadPoolTaskExecutor = new ThreadPoolTaskExecutor();
+    threadPoolTaskExecutor.setThreadNamePrefix("Mvc-");
+    threadPoolTaskExecutor.setCorePoolSize(MVC_POOL_SIZE);
+    threadPoolTaskExecutor.setMaxPoolSize(MVC_POOL_SIZE);
+    threadPoolTaskExecutor.setQueueCapacity(MVC_QUEUE_CAPACITY);
+    threadPoolTaskExecutor.afterPropertiesSet();
+    return threadPoolTaskExecutor;
+  }
+
+  /**
+   * Run async MVC handlers on {@link #mvcExecutor()} and time out slow ones.
+   *
+   * @param configurer {@link AsyncSupportConfigurer}
+   */
+  @Override
+  public void configureAsyncSupport(final AsyncSupportConfigurer configurer) {
+    configurer.setTaskExecutor(mvcExecutor());
+    configurer.setDefaultTimeout(asyncRequestTimeout);
+  }
+
 }
@@ -0,0 +1,120 @@
+/*
+ * Copyright (c) 2018 Stanislav Myachenkov
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+
+package org.mytoptag.cache;
+
+import org.mytoptag.model.dto.response.CacheStatisticsResponse;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Function;
+
+
+/**
+ * Bounded least recently used cache.
+ * Values loaded before an invalidation are not stored after it.
+ *
+ * @param <K> key type
+ * @param <V> value type
+ */
+public class LruCache<K, V> {
+
+  private final int capacity;
+
+  private final Map<K, V> entries;
+
+  private long generation;
+
+  private long hits;
+
+  private long misses;
+
+  private long evictions;
+
+  private long invalidations;
+
+  /**
+   * Ctor.
+   *
+   * @param capacity max number of entries, 0 disables caching
+   */
+  public LruCache(final int capacity) {
+    this.capacity = Math.max(capacity, 0);
+    this.entries = new LinkedHashMap<K, V>(16, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(final Map.Entry<K, V> eldest) {
+        if (size() > LruCache.this.capacity) {
+          evictions++;
+          return true;
+        }
+        return false;
+      }
+    };
+  }
+
+  /**
+   * Get cached value or load and cache it. Loader is called without holding the lock.
+   *
+   * @param key key
+   * @param loader value loader
+   * @return value
+   */
+  public V get(final K key, final Function<K, V> loader) {
+    final long loadGeneration;
+    synchronized (this) {
+      final V value = entries.get(key);
+      if (value != null) {
+        hits++;
+        return value;
+      }
+      misses++;
+      loadGeneration = generation;
+    }
+    final V value = loader.apply(key);
+    synchronized (this) {
+      if (capacity > 0 && loadGeneration == generation && value != null) {
+        entries.put(key, value);
+      }
+    }
+    return value;
+  }
+
+  /**
+   * Remove all entries and reject values being loaded.
+   */
+  public synchronized void invalidateAll() {
+    entries.clear();
+    generation++;
+    invalidations++;
+  }
+
+  /**
+   * Current statistics.
+   *
+   * @return {@link CacheStatisticsResponse}
+   */
+  public synchronized CacheStatisticsResponse statistics() {
+    return new CacheStatisticsResponse(entries.size(), capacity, hits, misses, evictions, invalidations);
+  }
+}
@@ -0,0 +1,133 @@
+/*
+ * Copyright (c) 2018 Stanislav Myachenkov
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+
+package org.mytoptag.category;
+
+import org.mytoptag.model.dto.TagSuggestion;
+import org.mytoptag.model.dto.query.TagCategorySuggestionQueryResult;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+
+/**
+ * Read-only tags of every category in primitive arrays.
+ * Categories are ordered by title, tags of a category by sort order.
+ */
+public final class CategorySnapshot {
+
+  private final String[] categories;
+
+  private final int[] offsets;
+
+  private final String[] tags;
+
+  private final int[] sortOrders;
+
+  private final CategoryTitleIndex titleIndex;
+
+  private CategorySnapshot(final String[] categories,
+                           final int[] offsets,
+                           final String[] tags,
+                           final int[] sortOrders) {
+    this.categories = categories;
+    this.offsets = offsets;
+    this.tags = tags;
+    this.sortOrders = sortOrders;
+    this.titleIndex = CategoryTitleIndex.of(Arrays.asList(categories));
+  }
+
+  /**
+   * Build snapshot of category tags.
+   *
+   * @param rows category tags in any order
+   * @return CategorySnapshot
+   */
+  public static CategorySnapshot of(final List<? extends TagCategorySuggestionQueryResult> rows) {
+    final List<TagCategorySuggestionQueryResult> sorted = new ArrayList<>(rows);
+    sorted.sort(
+        Comparator.comparing(TagCategorySuggestionQueryResult::getCategory)
+            .thenComparing(TagCategorySuggestionQueryResult::getSortOrder)
+    );
+    final List<String> categories = new ArrayList<>();
+    final int[] offsets = new int[sorted.size() + 1];
+    final String[] tags = new String[sorted.size()];
+    final int[] sortOrders = new int[sorted.size()];
+    for (int i = 0; i < sorted.size(); i++) {
+      final TagCategorySuggestionQueryResult row = sorted.get(i);
+      if (categories.isEmpty() || !categories.get(categories.size() - 1).equals(row.getCategory())) {
+        offsets[categories.size()] = i;
+        categories.add(row.getCategory());
+      }
+      tags[i] = row.getTag();
+      sortOrders[i] = row.getSortOrder();
+    }
+    offsets[categories.size()] = sorted.size();
+    return new CategorySnapshot(
+        categories.toArray(new String[categories.size()]),
+        Arrays.copyOf(offsets, categories.size() + 1),
+        tags,
+        sortOrders
+    );
+  }
+
+  /**
+   * Number of categories.
+   *
+   * @return number of categories with tags
+   */
+  public int size() {
+    return categories.length;
+  }
+
+  /**
+   * Find titles of categories containing a term.
+   *
+   * @param term search term
+   * @param limit max number of titles
+   * @return titles in ascending order
+   */
+  public List<String> find(final String term, final int limit) {
+    return titleIndex.find(term, limit);
+  }
+
+  /**
+   * Tags of a category.
+   *
+   * @param category exact category title
+   * @return list of {@link TagSuggestion} by sort order, empty if category is absent
+   */
+  public List<TagSuggestion> tags(final String category) {
+    final List<TagSuggestion> result = new ArrayList<>();
+    final int index = Arrays.binarySearch(categories, category);
+    if (index >= 0) {
+      for (int i = offsets[index]; i < offsets[index + 1]; i++) {
+        result.add(new TagSuggestion(tags[i], category, sortOrders[i]));
+      }
+    }
+    return result;
+  }
+}
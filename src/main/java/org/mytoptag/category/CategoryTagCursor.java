@@ -0,0 +1,86 @@
+/*
+ * Copyright (c) 2018 Stanislav Myachenkov
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+
+
+package org.mytoptag.category;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import org.mytoptag.exception.BadRequestException;
+
+import java.nio.ByteBuffer;
+import java.util.Base64;
+
+
+/**
+ * Position in category tags ordered by sort order and tag id.
+ * The token is an opaque url-safe encoding of the last returned row.
+ */
+@Getter
+@AllArgsConstructor
+public final class CategoryTagCursor {
+
+  /**
+   * Cursor before the first row.
+   */
+  public static final CategoryTagCursor FIRST = new CategoryTagCursor(Integer.MIN_VALUE, Integer.MIN_VALUE);
+
+  private final int sortOrder;
+
+  private final int tagId;
+
+  /**
+   * Decode cursor token.
+   *
+   * @param token token returned with the previous page, null for the first page
+   * @return CategoryTagCursor
+   * @throws BadRequestException if token is malformed
+   */
+  public static CategoryTagCursor decode(final String token) throws BadRequestException {
+    if (token == null || token.isEmpty()) {
+      return FIRST;
+    }
+    final byte[] bytes;
+    try {
+      bytes = Base64.getUrlDecoder().decode(token);
+    } catch (final IllegalArgumentException exception) {
+      throw new BadRequestException("malformed cursor " + token);
+    }
+    if (bytes.length != 2 * Integer.BYTES) {
+      throw new BadRequestException("malformed cursor " + token);
+    }
+    final ByteBuffer buffer = ByteBuffer.wrap(bytes);
+    return new CategoryTagCursor(buffer.getInt(), buffer.getInt());
+  }
+
+  /**
+   * Encode cursor token.
+   *
+   * @return url-safe token
+   */
+  public String encode() {
+    final ByteBuffer buffer = ByteBuffer.allocate(2 * Integer.BYTES).putInt(sortOrder).putInt(tagId);
+    return Base64.getUrlEncoder().withoutPadding().encodeToString(buffer.array());
+  }
+}
@@ -0,0 +1,148 @@
+/*
+ * Copyright (c) 2018 Stanislav Myachenkov
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+
+package org.mytoptag.category;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+
+/**
+ * Read-only trigram index of category titles.
+ * Finds titles containing a term, the same way as <code>title like '%term%'</code> does.
+ */
+public final class CategoryTitleIndex {
+
+  private static final int GRAM = 3;
+
+  private final String[] titles;
+
+  private final long[] grams;
+
+  private final int[][] postings;
+
+  private CategoryTitleIndex(final String[] titles, final long[] grams, final int[][] postings) {
+    this.titles = titles;
+    this.grams = grams;
+    this.postings = postings;
+  }
+
+  /**
+   * Build index of titles.
+   *
+   * @param titles category titles
+   * @return CategoryTitleIndex
+   */
+  public static CategoryTitleIndex of(final Collection<String> titles) {
+    final String[] sorted = titles.stream().distinct().sorted().toArray(String[]::new);
+    final Map<Long, List<Integer>> gramTitles = new HashMap<>();
+    for (int i = 0; i < sorted.length; i++) {
+      for (int j = 0; j + GRAM <= sorted[i].length(); j++) {
+        final List<Integer> posting = gramTitles.computeIfAbsent(gram(sorted[i], j), gram -> new ArrayList<>());
+        if (posting.isEmpty() || posting.get(posting.size() - 1) != i) {
+          posting.add(i);
+        }
+      }
+    }
+    final long[] grams = gramTitles.keySet().stream().mapToLong(Long::longValue).sorted().toArray();
+    final int[][] postings = new int[grams.length][];
+    for (int i = 0; i < grams.length; i++) {
+      postings[i] = gramTitles.get(grams[i]).stream().mapToInt(Integer::intValue).toArray();
+    }
+    return new CategoryTitleIndex(sorted, grams, postings);
+  }
+
+  /**
+   * Number of indexed titles.
+   *
+   * @return number of titles
+   */
+  public int size() {
+    return titles.length;
+  }
+
+  /**
+   * Find titles containing a term.
+   *
+   * @param term search term
+   * @param limit max number of titles
+   * @return titles in ascending order
+   */
+  public List<String> find(final String term, final int limit) {
+    final List<String> result = new ArrayList<>();
+    if (term.length() < GRAM) {
+      for (int i = 0; i < titles.length && result.size() < limit; i++) {
+        if (titles[i].contains(term)) {
+          result.add(titles[i]);
+        }
+      }
+      return result;
+    }
+    final int[][] lists = new int[term.length() - GRAM + 1][];
+    for (int i = 0; i < lists.length; i++) {
+      final int position = Arrays.binarySearch(grams, gram(term, i));
+      if (position < 0) {
+        return result;
+      }
+      lists[i] = postings[position];
+    }
+    Arrays.sort(lists, (first, second) -> Integer.compare(first.length, second.length));
+    final int[] cursors = new int[lists.length];
+    for (final int candidate : lists[0]) {
+      if (result.size() == limit) {
+        break;
+      }
+      if (containsInAll(lists, cursors, candidate) && titles[candidate].contains(term)) {
+        result.add(titles[candidate]);
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Advance cursors of all lists but the first one up to candidate.
+   */
+  private static boolean containsInAll(final int[][] lists, final int[] cursors, final int candidate) {
+    for (int i = 1; i < lists.length; i++) {
+      final int[] list = lists[i];
+      while (cursors[i] < list.length && list[cursors[i]] < candidate) {
+        cursors[i]++;
+      }
+      if (cursors[i] == list.length || list[cursors[i]] != candidate) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static long gram(final String value, final int offset) {
+    return (long) value.charAt(offset) << (2 * Character.SIZE)
+        | (long) value.charAt(offset + 1) << Character.SIZE
+        | value.charAt(offset + 2);
+  }
+}
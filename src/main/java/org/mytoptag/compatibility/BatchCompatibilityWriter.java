@@ -0,0 +1,93 @@
+/*
+ * Copyright (c) 2018 Stanislav Myachenkov
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+
+
+package org.mytoptag.compatibility;
+
+import lombok.extern.slf4j.Slf4j;
+import org.mytoptag.model.Compatibility;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.List;
+
+
+/**
+ * {@link CompatibilityWriter} with plain JDBC batch inserts.
+ */
+@Slf4j
+public class BatchCompatibilityWriter implements CompatibilityWriter {
+
+  private static final String INSERT =
+      "insert into %s (tag_a, tag_b, compatibility, occurrence) values (?, ?, ?, ?)";
+
+  private final JdbcTemplate jdbcTemplate;
+
+  private final String table;
+
+  private final int batchSize;
+
+  private final long start = System.currentTimeMillis();
+
+  private long rows;
+
+  /**
+   * Ctor.
+   *
+   * @param jdbcTemplate {@link JdbcTemplate}
+   * @param table target table
+   * @param batchSize JDBC batch size
+   */
+  public BatchCompatibilityWriter(final JdbcTemplate jdbcTemplate, final String table, final int batchSize) {
+    this.jdbcTemplate = jdbcTemplate;
+    this.table = table;
+    this.batchSize = batchSize;
+  }
+
+  @Override
+  public void write(final List<Compatibility> compatibilities) {
+    jdbcTemplate.batchUpdate(
+        String.format(INSERT, table),
+        compatibilities,
+        batchSize,
+        (statement, compatibility) -> {
+          statement.setInt(1, compatibility.getId().getTagA());
+          statement.setInt(2, compatibility.getId().getTagB());
+          statement.setDouble(3, compatibility.getCompatibility());
+          statement.setInt(4, compatibility.getOccurrence());
+        }
+    );
+    rows += compatibilities.size();
+  }
+
+  @Override
+  public void flush() {
+    // every batch is committed on its own
+  }
+
+  @Override
+  public void close() {
+    final long millis = Math.max(System.currentTimeMillis() - start, 1);
+    log.info("inserted {} rows to {} in {} ms, {} rows/s", rows, table, millis, rows * 1000 / millis);
+  }
+}
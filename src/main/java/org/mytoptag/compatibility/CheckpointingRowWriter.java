@@ -0,0 +1,94 @@
+/*
+ * Copyright (c) 2018 Stanislav Myachenkov
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+
+package org.mytoptag.compatibility;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+
+/**
+ * Writes calculated rows and periodically records tags of durably written rows,
+ * so an interrupted build can be resumed.
+ */
+public class CheckpointingRowWriter implements Consumer<CompatibilityRow> {
+
+  private final CompatibilityWriter writer;
+
+  private final PostingLists postingLists;
+
+  private final Consumer<List<Integer>> checkpoint;
+
+  private final MatrixBuildProgress progress;
+
+  private final int checkpointRows;
+
+  private final List<Integer> completedTags = new ArrayList<>();
+
+  /**
+   * Ctor.
+   *
+   * @param writer {@link CompatibilityWriter}
+   * @param postingLists {@link PostingLists} of calculated rows
+   * @param checkpoint consumer of tag ids of written rows
+   * @param progress {@link MatrixBuildProgress}
+   * @param checkpointRows number of rows between checkpoints
+   */
+  public CheckpointingRowWriter(final CompatibilityWriter writer,
+                                final PostingLists postingLists,
+                                final Consumer<List<Integer>> checkpoint,
+                                final MatrixBuildProgress progress,
+                                final int checkpointRows) {
+    this.writer = writer;
+    this.postingLists = postingLists;
+    this.checkpoint = checkpoint;
+    this.progress = progress;
+    this.checkpointRows = Math.max(checkpointRows, 1);
+  }
+
+  @Override
+  public void accept(final CompatibilityRow row) {
+    if (!row.getCompatibilities().isEmpty()) {
+      writer.write(row.getCompatibilities());
+    }
+    completedTags.add(postingLists.tag(row.getRow()));
+    progress.rowDone(row.getCompatibilities().size());
+    if (completedTags.size() >= checkpointRows) {
+      checkpoint();
+    }
+  }
+
+  /**
+   * Flush written rows and record their tags.
+   */
+  public void checkpoint() {
+    if (completedTags.isEmpty()) {
+      return;
+    }
+    writer.flush();
+    checkpoint.accept(completedTags);
+    completedTags.clear();
+  }
+}
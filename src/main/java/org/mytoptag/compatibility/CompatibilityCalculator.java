@@ -0,0 +1,143 @@
+/*
+ * Copyright (c) 2018 Stanislav Myachenkov
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+
+
+package org.mytoptag.compatibility;
+
+import org.mytoptag.model.Compatibility;
+import org.mytoptag.model.CompatibilityKey;
+import org.mytoptag.util.BoundedMinHeap;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.IntConsumer;
+
+
+/**
+ * Calculates exact tag compatibility from {@link PostingLists}.
+ * Compatibility of tags A and B is the share of posts of A that also contain B,
+ * every pair is calculated once, for the tag with the lower id.
+ * Rank of tags in a row by compatibility is the rank by number of common posts,
+ * so top K of a row is selected by common posts count.
+ */
+public class CompatibilityCalculator {
+
+  private static final int SCALE = 5;
+
+  private final PostingLists postingLists;
+
+  private final int topK;
+
+  /**
+   * Ctor.
+   *
+   * @param postingLists {@link PostingLists}
+   */
+  public CompatibilityCalculator(final PostingLists postingLists) {
+    this(postingLists, 0);
+  }
+
+  /**
+   * Ctor.
+   *
+   * @param postingLists {@link PostingLists}
+   * @param topK max number of entries in a row, all entries are kept if not positive
+   */
+  public CompatibilityCalculator(final PostingLists postingLists, final int topK) {
+    this.postingLists = postingLists;
+    this.topK = topK;
+  }
+
+  /**
+   * Calculate compatibility of a row tag with every tag that follows it.
+   * If top K is set, only K most compatible tags are kept.
+   *
+   * @param row row index in {@link PostingLists}
+   * @return list of {@link Compatibility} with non zero value
+   */
+  public List<Compatibility> row(final int row) {
+    final int[] posts = postingLists.posts(row);
+    final List<Compatibility> compatibilities = new ArrayList<>();
+    if (posts.length == 0) {
+      return compatibilities;
+    }
+    if (topK > 0) {
+      final BoundedMinHeap heap = new BoundedMinHeap(topK);
+      forEachCandidate(row, column -> {
+        final int compatiblePosts = Intersections.size(posts, postingLists.posts(column));
+        if (compatiblePosts > 0) {
+          heap.offer(compatiblePosts, column);
+        }
+      });
+      for (int i = 0; i < heap.size(); i++) {
+        compatibilities.add(compatibility(row, heap.value(i), (int) heap.key(i), posts.length));
+      }
+      return compatibilities;
+    }
+    forEachCandidate(row, column -> {
+      final int compatiblePosts = Intersections.size(posts, postingLists.posts(column));
+      if (compatiblePosts > 0) {
+        compatibilities.add(compatibility(row, column, compatiblePosts, posts.length));
+      }
+    });
+    return compatibilities;
+  }
+
+  /**
+   * Rows that can be compatible with a row tag and follow it. Every following row by default.
+   *
+   * @param row row index in {@link PostingLists}
+   * @param action consumer of candidate row indexes
+   */
+  protected void forEachCandidate(final int row, final IntConsumer action) {
+    for (int column = row + 1; column < postingLists.size(); column++) {
+      action.accept(column);
+    }
+  }
+
+  private Compatibility compatibility(final int row, final int column, final int compatiblePosts,
+                                      final int allPosts) {
+    return new Compatibility(
+        new CompatibilityKey(postingLists.tag(row), postingLists.tag(column)),
+        compatibility(compatiblePosts, allPosts),
+        compatiblePosts
+    );
+  }
+
+  /**
+   * Compatibility value.
+   *
+   * @param compatiblePosts number of posts with both tags
+   * @param allPosts number of posts with row tag
+   * @return compatibility rounded to five decimal digits
+   */
+  public static double compatibility(final long compatiblePosts, final long allPosts) {
+    return new BigDecimal(compatiblePosts).divide(
+        BigDecimal.valueOf(allPosts),
+        SCALE,
+        BigDecimal.ROUND_HALF_UP
+    ).doubleValue();
+  }
+}
@@ -0,0 +1,280 @@
+/*
+ * Copyright (c) 2018 Stanislav Myachenkov
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+
+
+package org.mytoptag.compatibility;
+
+import org.mytoptag.model.dto.query.CompatibleSourceTagResult;
+import org.mytoptag.model.dto.query.CompatibleTagResult;
+import org.mytoptag.model.dto.query.SourceTagSuggestionQueryResult;
+import org.mytoptag.model.dto.query.TagSuggestionQueryResult;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Set;
+
+
+/**
+ * Read-only compatibility matrix in primitive arrays.
+ * Partners of every tag are sorted by compatibility descending,
+ * only partners with known count are kept.
+ */
+public final class CompatibilityIndex {
+
+  private static final double SCALE = 100_000d;
+
+  final int[] tags;
+
+  final int[] offsets;
+
+  final int[] partners;
+
+  final float[] weights;
+
+  final String[] titles;
+
+  final int[] counts;
+
+  CompatibilityIndex(final int[] tags,
+                     final int[] offsets,
+                     final int[] partners,
+                     final float[] weights,
+                     final String[] titles,
+                     final int[] counts) {
+    this.tags = tags;
+    this.offsets = offsets;
+    this.partners = partners;
+    this.weights = weights;
+    this.titles = titles;
+    this.counts = counts;
+  }
+
+  /**
+   * Number of stored tag pairs.
+   *
+   * @return number of pairs
+   */
+  public int pairs() {
+    return partners.length;
+  }
+
+  /**
+   * Get most compatible tags, the same way as
+   * {@link org.mytoptag.repository.CompatibilityRepository#getCompatibleTags(List, Integer)} does.
+   *
+   * @param tagIds tag ids
+   * @param limit max number of results
+   * @return list of {@link TagSuggestionQueryResult}
+   */
+  public List<TagSuggestionQueryResult> compatibleTags(final Collection<Integer> tagIds, final int limit) {
+    final PriorityQueue<int[]> cursors = new PriorityQueue<>(
+        Math.max(tagIds.size(), 1),
+        (first, second) -> Float.compare(weights[second[0]], weights[first[0]])
+    );
+    tagIds.stream().distinct().forEach(id -> {
+      final int row = Arrays.binarySearch(tags, id);
+      if (row >= 0 && offsets[row] < offsets[row + 1]) {
+        cursors.add(new int[]{offsets[row], offsets[row + 1]});
+      }
+    });
+    final List<TagSuggestionQueryResult> result = new ArrayList<>();
+    final Set<String> seen = new HashSet<>();
+    while (!cursors.isEmpty() && result.size() < limit) {
+      final int[] cursor = cursors.poll();
+      final int partner = partners[cursor[0]];
+      final BigDecimal compatibility = BigDecimal.valueOf(Math.round(weights[cursor[0]] * SCALE) / SCALE);
+      if (seen.add(titles[partner] + '|' + compatibility)) {
+        result.add(new CompatibleTagResult(titles[partner], compatibility, counts[partner]));
+      }
+      if (++cursor[0] < cursor[1]) {
+        cursors.add(cursor);
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Get most compatible tags of every source tag, the same way as
+   * {@link org.mytoptag.repository.CompatibilityRepository#getCompatibleTagsOfSources(List, Integer)} does.
+   *
+   * @param tagIds source tag ids
+   * @param limit max number of results per source tag
+   * @return list of {@link SourceTagSuggestionQueryResult}
+   */
+  public List<SourceTagSuggestionQueryResult> compatibleTagsOfSources(final Collection<Integer> tagIds,
+                                                                     final int limit) {
+    final List<SourceTagSuggestionQueryResult> result = new ArrayList<>();
+    tagIds.stream().distinct().forEach(id -> {
+      final int row = Arrays.binarySearch(tags, id);
+      if (row >= 0) {
+        final int to = offsets[row] + Math.min(offsets[row + 1] - offsets[row], limit);
+        for (int i = offsets[row]; i < to; i++) {
+          result.add(new CompatibleSourceTagResult(
+              id,
+              titles[partners[i]],
+              BigDecimal.valueOf(Math.round(weights[i] * SCALE) / SCALE),
+              counts[partners[i]]
+          ));
+        }
+      }
+    });
+    return result;
+  }
+
+  /**
+   * {@link CompatibilityIndex} builder. Tags are added first, then pairs ordered by first tag.
+   */
+  public static final class Builder {
+
+    private static final int INITIAL_CAPACITY = 1024;
+
+    private int[] dictionary = new int[INITIAL_CAPACITY];
+
+    private String[] titles = new String[INITIAL_CAPACITY];
+
+    private int[] counts = new int[INITIAL_CAPACITY];
+
+    private int tagsSize;
+
+    private int[] rows = new int[INITIAL_CAPACITY];
+
+    private int[] offsets = new int[INITIAL_CAPACITY];
+
+    private int rowsSize;
+
+    private int[] partners = new int[INITIAL_CAPACITY];
+
+    private float[] weights = new float[INITIAL_CAPACITY];
+
+    private int pairsSize;
+
+    /**
+     * Add tag with its title and count.
+     *
+     * @param id tag id
+     * @param title tag title
+     * @param count tag count
+     * @return this builder
+     */
+    public Builder tag(final int id, final String title, final int count) {
+      if (tagsSize == dictionary.length) {
+        dictionary = Arrays.copyOf(dictionary, tagsSize * 2);
+        titles = Arrays.copyOf(titles, tagsSize * 2);
+        counts = Arrays.copyOf(counts, tagsSize * 2);
+      }
+      dictionary[tagsSize] = id;
+      titles[tagsSize] = title;
+      counts[tagsSize] = count;
+      tagsSize++;
+      return this;
+    }
+
+    /**
+     * Add tag pair, pairs must be ordered by first tag.
+     *
+     * @param tagA first tag id
+     * @param tagB second tag id
+     * @param compatibility compatibility
+     * @return this builder
+     */
+    public Builder pair(final int tagA, final int tagB, final double compatibility) {
+      if (rowsSize == 0 || rows[rowsSize - 1] != tagA) {
+        if (rowsSize > 0 && rows[rowsSize - 1] > tagA) {
+          throw new IllegalStateException("compatibility pairs are not ordered by first tag");
+        }
+        if (rowsSize == rows.length) {
+          rows = Arrays.copyOf(rows, rowsSize * 2);
+          offsets = Arrays.copyOf(offsets, rowsSize * 2);
+        }
+        rows[rowsSize] = tagA;
+        offsets[rowsSize] = pairsSize;
+        rowsSize++;
+      }
+      if (pairsSize == partners.length) {
+        partners = Arrays.copyOf(partners, pairsSize * 2);
+        weights = Arrays.copyOf(weights, pairsSize * 2);
+      }
+      partners[pairsSize] = tagB;
+      weights[pairsSize] = (float) compatibility;
+      pairsSize++;
+      return this;
+    }
+
+    /**
+     * Build index. Pairs with partner absent in tags are dropped.
+     *
+     * @return CompatibilityIndex
+     */
+    public CompatibilityIndex build() {
+      final long[] order = new long[tagsSize];
+      for (int i = 0; i < tagsSize; i++) {
+        order[i] = (long) dictionary[i] << Integer.SIZE | i;
+      }
+      Arrays.sort(order);
+      final int[] sortedIds = new int[tagsSize];
+      final String[] sortedTitles = new String[tagsSize];
+      final int[] sortedCounts = new int[tagsSize];
+      for (int i = 0; i < tagsSize; i++) {
+        final int index = (int) order[i];
+        sortedIds[i] = dictionary[index];
+        sortedTitles[i] = titles[index];
+        sortedCounts[i] = counts[index];
+      }
+      final int[] resultOffsets = new int[rowsSize + 1];
+      int size = 0;
+      for (int row = 0; row < rowsSize; row++) {
+        final int from = offsets[row];
+        final int to = row + 1 < rowsSize ? offsets[row + 1] : pairsSize;
+        final long[] keys = new long[to - from];
+        int length = 0;
+        for (int i = from; i < to; i++) {
+          final int partner = Arrays.binarySearch(sortedIds, partners[i]);
+          if (partner >= 0) {
+            keys[length++] = (long) ~Float.floatToIntBits(weights[i]) << Integer.SIZE | partner;
+          }
+        }
+        Arrays.sort(keys, 0, length);
+        for (int i = 0; i < length; i++) {
+          partners[size] = (int) keys[i];
+          weights[size] = Float.intBitsToFloat(~(int) (keys[i] >>> Integer.SIZE));
+          size++;
+        }
+        resultOffsets[row + 1] = size;
+      }
+      return new CompatibilityIndex(
+          Arrays.copyOf(rows, rowsSize),
+          resultOffsets,
+          Arrays.copyOf(partners, size),
+          Arrays.copyOf(weights, size),
+          sortedTitles,
+          sortedCounts
+      );
+    }
+  }
+}
@@ -0,0 +1,159 @@
+/*
+ * Copyright (c) 2018 Stanislav Myachenkov
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+
+package org.mytoptag.compatibility;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+
+/**
+ * Binary file format of {@link CompatibilityIndex}.
+ * Header holds format version and version of the source compatibility matrix,
+ * followed by the CSR arrays and the tag dictionary, all big-endian.
+ */
+@Slf4j
+public final class CompatibilityIndexSnapshot {
+
+  private static final int MAGIC = 0x4D54_5447;
+
+  private static final int FORMAT_VERSION = 1;
+
+  private static final int HEADER_SIZE = 4 * Integer.BYTES + Long.BYTES;
+
+  private static final int BUFFER_SIZE = 1 << 16;
+
+  private CompatibilityIndexSnapshot() {
+  }
+
+  /**
+   * Write index to a temporary file and atomically move it to the path.
+   *
+   * @param index {@link CompatibilityIndex}
+   * @param source version of the compatibility matrix the index was loaded from
+   * @param path snapshot path
+   * @throws IOException if file can't be written
+   */
+  public static void write(final CompatibilityIndex index, final long source, final Path path) throws IOException {
+    final Path directory = path.toAbsolutePath().getParent();
+    Files.createDirectories(directory);
+    final Path temporary = Files.createTempFile(directory, path.getFileName().toString(), ".tmp");
+    try {
+      try (DataOutputStream output = new DataOutputStream(
+          new BufferedOutputStream(Files.newOutputStream(temporary), BUFFER_SIZE))) {
+        output.writeInt(MAGIC);
+        output.writeInt(FORMAT_VERSION);
+        output.writeLong(source);
+        output.writeInt(index.titles.length);
+        output.writeInt(index.tags.length);
+        writeInts(output, index.tags);
+        writeInts(output, index.offsets);
+        output.writeInt(index.partners.length);
+        writeInts(output, index.partners);
+        for (final float weight : index.weights) {
+          output.writeFloat(weight);
+        }
+        writeInts(output, index.counts);
+        for (final String title : index.titles) {
+          final byte[] bytes = title.getBytes(StandardCharsets.UTF_8);
+          output.writeInt(bytes.length);
+          output.write(bytes);
+        }
+      }
+      Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    } finally {
+      Files.deleteIfExists(temporary);
+    }
+  }
+
+  /**
+   * Map snapshot file and read index from it.
+   *
+   * @param path snapshot path
+   * @param source version of the current compatibility matrix
+   * @return {@link CompatibilityIndex} or null if snapshot is absent, of other format or stale
+   * @throws IOException if file can't be read
+   */
+  public static CompatibilityIndex open(final Path path, final long source) throws IOException {
+    if (!Files.isRegularFile(path)) {
+      return null;
+    }
+    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+      if (channel.size() < HEADER_SIZE || channel.size() > Integer.MAX_VALUE) {
+        log.warn("compatibility index snapshot {} has unsupported size {}", path, channel.size());
+        return null;
+      }
+      final MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+      if (buffer.getInt() != MAGIC || buffer.getInt() != FORMAT_VERSION) {
+        log.warn("compatibility index snapshot {} has unsupported format", path);
+        return null;
+      }
+      final long snapshotSource = buffer.getLong();
+      if (snapshotSource != source) {
+        log.info("compatibility index snapshot {} of matrix {} is stale, current matrix is {}",
+            path, snapshotSource, source);
+        return null;
+      }
+      final int tagCount = buffer.getInt();
+      final int[] tags = readInts(buffer, buffer.getInt());
+      final int[] offsets = readInts(buffer, tags.length + 1);
+      final int[] partners = readInts(buffer, buffer.getInt());
+      final float[] weights = new float[partners.length];
+      buffer.asFloatBuffer().get(weights);
+      buffer.position(buffer.position() + weights.length * Float.BYTES);
+      final int[] counts = readInts(buffer, tagCount);
+      final String[] titles = new String[tagCount];
+      for (int i = 0; i < tagCount; i++) {
+        final byte[] bytes = new byte[buffer.getInt()];
+        buffer.get(bytes);
+        titles[i] = new String(bytes, StandardCharsets.UTF_8);
+      }
+      return new CompatibilityIndex(tags, offsets, partners, weights, titles, counts);
+    }
+  }
+
+  private static void writeInts(final DataOutputStream output, final int[] values) throws IOException {
+    for (final int value : values) {
+      output.writeInt(value);
+    }
+  }
+
+  private static int[] readInts(final ByteBuffer buffer, final int length) {
+    final int[] values = new int[length];
+    buffer.asIntBuffer().get(values);
+    buffer.position(buffer.position() + length * Integer.BYTES);
+    return values;
+  }
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright (c) 2018 Stanislav Myachenkov
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+
+
+package org.mytoptag.compatibility;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.sql.SQLException;
+import javax.sql.DataSource;
+
+
+/**
+ * Creates {@link CompatibilityWriter} configured by <code>compatibility.writer</code> property:
+ * <code>copy</code> for postgres binary copy or <code>batch</code> for JDBC batch inserts.
+ * Copy writer falls back to batch inserts if copy is not supported.
+ */
+@Component
+@Slf4j
+public class CompatibilityWriterFactory {
+
+  private static final String COPY = "copy";
+
+  private DataSource dataSource;
+
+  private JdbcTemplate jdbcTemplate;
+
+  @Value("${compatibility.writer:copy}")
+  private String writer;
+
+  @Value("${spring.jpa.properties.hibernate.jdbc.batch_size}")
+  private Integer maxBatchSize;
+
+  /**
+   * Ctor.
+   *
+   * @param dataSource {@link DataSource}
+   * @param jdbcTemplate {@link JdbcTemplate}
+   */
+  @Autowired
+  public CompatibilityWriterFactory(final DataSource dataSource, final JdbcTemplate jdbcTemplate) {
+    this.dataSource = dataSource;
+    this.jdbcTemplate = jdbcTemplate;
+  }
+
+  /**
+   * Create writer.
+   *
+   * @param table target table
+   * @return CompatibilityWriter
+   */
+  public CompatibilityWriter create(final String table) {
+    if (COPY.equals(writer)) {
+      try {
+        return new CopyCompatibilityWriter(dataSource, table);
+      } catch (final SQLException ex) {
+        log.warn("copy to {} is not available, falling back to batch inserts", table, ex);
+      }
+    }
+    return new BatchCompatibilityWriter(jdbcTemplate, table, maxBatchSize);
+  }
+}
@@ -0,0 +1,147 @@
+/*
+ * Copyright (c) 2018 Stanislav Myachenkov
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+
+package org.mytoptag.compatibility;
+
+import org.mytoptag.model.dto.CompatibleTagSuggestion;
+import org.mytoptag.model.dto.query.SourceTagSuggestionQueryResult;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+
+
+/**
+ * Ranks compatible tags of several source tags by compatibility blended with popularity.
+ * Only the best <code>limit</code> tags are kept, in a bounded min-heap.
+ */
+public final class CompatibleTagRanking {
+
+  private static final int SCALE = 5;
+
+  private static final Comparator<CompatibleTagSuggestion> BY_SCORE =
+      Comparator.comparing(CompatibleTagSuggestion::getScore)
+          .thenComparing(CompatibleTagSuggestion::getTag, Comparator.reverseOrder());
+
+  private CompatibleTagRanking() {
+  }
+
+  /**
+   * Rank compatible tags. Compatibility of a tag is averaged over all sources,
+   * a tag is counted once per source. Popularity is its log-scaled count relative
+   * to the most popular candidate.
+   *
+   * @param candidates compatible tags of every source
+   * @param sources titles of source tags by id, excluded from result
+   * @param popularityWeight weight of popularity in score, from 0 to 1
+   * @param limit max number of results
+   * @return list of {@link CompatibleTagSuggestion} by score descending
+   */
+  public static List<CompatibleTagSuggestion> rank(final Collection<SourceTagSuggestionQueryResult> candidates,
+                                                   final Map<Integer, String> sources,
+                                                   final double popularityWeight,
+                                                   final int limit) {
+    final Set<String> sourceTitles = new HashSet<>(sources.values());
+    final Map<String, Candidate> compatibilities = new HashMap<>();
+    int maxCount = 0;
+    for (final SourceTagSuggestionQueryResult candidate : candidates) {
+      if (sourceTitles.contains(candidate.getTitle())) {
+        continue;
+      }
+      compatibilities.computeIfAbsent(candidate.getTitle(), title -> new Candidate(candidate.getCount()))
+          .add(candidate.getSource(), candidate.getCompatibility().doubleValue());
+      maxCount = Math.max(maxCount, candidate.getCount());
+    }
+    final double maxPopularity = Math.log1p(maxCount);
+    final PriorityQueue<CompatibleTagSuggestion> heap =
+        new PriorityQueue<>(Math.min(limit, compatibilities.size()) + 1, BY_SCORE);
+    for (final Map.Entry<String, Candidate> entry : compatibilities.entrySet()) {
+      final double compatibility = entry.getValue().compatibility / Math.max(sources.size(), 1);
+      final int count = entry.getValue().count;
+      final double popularity = maxPopularity > 0 ? Math.log1p(count) / maxPopularity : 0;
+      final double score = (1 - popularityWeight) * compatibility + popularityWeight * popularity;
+      if (heap.size() < limit) {
+        heap.add(suggestion(entry.getKey(), compatibility, count, score));
+      } else if (!heap.isEmpty() && score >= heap.peek().getScore()) {
+        final CompatibleTagSuggestion suggestion = suggestion(entry.getKey(), compatibility, count, score);
+        if (BY_SCORE.compare(suggestion, heap.peek()) > 0) {
+          heap.poll();
+          heap.add(suggestion);
+        }
+      }
+    }
+    final List<CompatibleTagSuggestion> result = new ArrayList<>(heap);
+    result.sort(BY_SCORE.reversed());
+    return result;
+  }
+
+  private static CompatibleTagSuggestion suggestion(final String title, final double compatibility,
+                                                    final int count, final double score) {
+    return new CompatibleTagSuggestion(
+        title,
+        BigDecimal.valueOf(compatibility).setScale(SCALE, BigDecimal.ROUND_HALF_UP),
+        count,
+        score
+    );
+  }
+
+  /**
+   * Compatibility of a candidate summed over its sources, every source is counted once.
+   */
+  private static final class Candidate {
+
+    private final int count;
+
+    private int[] sources = new int[2];
+
+    private int size;
+
+    private double compatibility;
+
+    private Candidate(final int count) {
+      this.count = count;
+    }
+
+    private void add(final int source, final double sourceCompatibility) {
+      for (int i = 0; i < size; i++) {
+        if (sources[i] == source) {
+          return;
+        }
+      }
+      if (size == sources.length) {
+        sources = Arrays.copyOf(sources, size * 2);
+      }
+      sources[size++] = source;
+      compatibility += sourceCompatibility;
+    }
+  }
+}
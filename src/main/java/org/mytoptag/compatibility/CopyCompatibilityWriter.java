@@ -0,0 +1,157 @@
+/*
+ * Copyright (c) 2018 Stanislav Myachenkov
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+
+
+package org.mytoptag.compatibility;
+
+import lombok.extern.slf4j.Slf4j;
+import org.mytoptag.model.Compatibility;
+import org.postgresql.PGConnection;
+import org.postgresql.copy.CopyIn;
+import org.postgresql.copy.PGCopyOutputStream;
+import org.springframework.dao.DataAccessResourceFailureException;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.List;
+import javax.sql.DataSource;
+
+
+/**
+ * {@link CompatibilityWriter} streaming rows with postgres binary <code>COPY ... FROM STDIN</code>.
+ */
+@Slf4j
+public class CopyCompatibilityWriter implements CompatibilityWriter {
+
+  private static final String COPY =
+      "copy %s (tag_a, tag_b, compatibility, occurrence) from stdin (format binary)";
+
+  private static final byte[] SIGNATURE = {'P', 'G', 'C', 'O', 'P', 'Y', '\n', (byte) 0xFF, '\r', '\n', 0};
+
+  private static final short FIELDS = 4;
+
+  private static final short TRAILER = -1;
+
+  private static final int BUFFER_SIZE = 1 << 16;
+
+  private final String table;
+
+  private final Connection connection;
+
+  private CopyIn copyIn;
+
+  private DataOutputStream output;
+
+  private final long start = System.currentTimeMillis();
+
+  private long rows;
+
+  /**
+   * Ctor. Starts copy operation on a new connection.
+   *
+   * @param dataSource postgres {@link DataSource}
+   * @param table target table
+   * @throws SQLException if connection is not a postgres connection or copy can't be started
+   */
+  public CopyCompatibilityWriter(final DataSource dataSource, final String table) throws SQLException {
+    this.table = table;
+    this.connection = dataSource.getConnection();
+    try {
+      begin();
+    } catch (final SQLException | IOException ex) {
+      connection.close();
+      throw ex instanceof SQLException ? (SQLException) ex : new SQLException(ex);
+    }
+  }
+
+  @Override
+  public void write(final List<Compatibility> compatibilities) {
+    try {
+      for (final Compatibility compatibility : compatibilities) {
+        output.writeShort(FIELDS);
+        output.writeInt(Integer.BYTES);
+        output.writeInt(compatibility.getId().getTagA());
+        output.writeInt(Integer.BYTES);
+        output.writeInt(compatibility.getId().getTagB());
+        output.writeInt(Double.BYTES);
+        output.writeDouble(compatibility.getCompatibility());
+        output.writeInt(Integer.BYTES);
+        output.writeInt(compatibility.getOccurrence());
+      }
+      rows += compatibilities.size();
+    } catch (final IOException ex) {
+      throw new DataAccessResourceFailureException("failed to copy rows to " + table, ex);
+    }
+  }
+
+  /**
+   * Completes current copy operation, committing copied rows, and starts a new one.
+   */
+  @Override
+  public void flush() {
+    try {
+      end();
+      begin();
+    } catch (final SQLException | IOException ex) {
+      throw new DataAccessResourceFailureException("failed to flush copy to " + table, ex);
+    }
+  }
+
+  @Override
+  public void close() {
+    try {
+      end();
+      final long millis = Math.max(System.currentTimeMillis() - start, 1);
+      log.info("copied {} rows to {} in {} ms, {} rows/s", rows, table, millis, rows * 1000 / millis);
+    } catch (final IOException ex) {
+      throw new DataAccessResourceFailureException("failed to complete copy to " + table, ex);
+    } finally {
+      try {
+        if (copyIn.isActive()) {
+          copyIn.cancelCopy();
+        }
+        connection.close();
+      } catch (final SQLException ex) {
+        log.error("failed to release copy connection", ex);
+      }
+    }
+  }
+
+  private void begin() throws SQLException, IOException {
+    copyIn = connection.unwrap(PGConnection.class)
+        .getCopyAPI()
+        .copyIn(String.format(COPY, table));
+    output = new DataOutputStream(new PGCopyOutputStream(copyIn, BUFFER_SIZE));
+    output.write(SIGNATURE);
+    output.writeInt(0);
+    output.writeInt(0);
+  }
+
+  private void end() throws IOException {
+    output.writeShort(TRAILER);
+    output.close();
+  }
+}
@@ -0,0 +1,120 @@
+/*
+ * Copyright (c) 2018 Stanislav Myachenkov
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+
+
+package org.mytoptag.compatibility;
+
+
+/**
+ * Intersection of sorted distinct int arrays.
+ */
+public final class Intersections {
+
+  /**
+   * Size ratio at which galloping search becomes cheaper than a linear merge.
+   */
+  private static final int GALLOP_RATIO = 32;
+
+  private Intersections() {
+  }
+
+  /**
+   * Count common elements of two sorted distinct arrays.
+   *
+   * @param first sorted distinct array
+   * @param second sorted distinct array
+   * @return size of intersection
+   */
+  public static int size(final int[] first, final int[] second) {
+    if (first.length == 0 || second.length == 0) {
+      return 0;
+    }
+    if (first[first.length - 1] < second[0] || second[second.length - 1] < first[0]) {
+      return 0;
+    }
+    if (first.length > second.length) {
+      return size(second, first);
+    }
+    if (second.length / first.length >= GALLOP_RATIO) {
+      return gallop(first, second);
+    }
+    return merge(first, second);
+  }
+
+  private static int merge(final int[] first, final int[] second) {
+    int count = 0;
+    int i = 0;
+    int j = 0;
+    while (i < first.length && j < second.length) {
+      if (first[i] < second[j]) {
+        i++;
+      } else if (first[i] > second[j]) {
+        j++;
+      } else {
+        count++;
+        i++;
+        j++;
+      }
+    }
+    return count;
+  }
+
+  private static int gallop(final int[] small, final int[] large) {
+    int count = 0;
+    int low = 0;
+    for (final int value : small) {
+      int bound = 1;
+      while (low + bound < large.length && large[low + bound] < value) {
+        bound <<= 1;
+      }
+      final int found = binarySearch(large, low, Math.min(low + bound + 1, large.length), value);
+      if (found >= 0) {
+        count++;
+        low = found + 1;
+      } else {
+        low = -found - 1;
+      }
+      if (low >= large.length) {
+        break;
+      }
+    }
+    return count;
+  }
+
+  private static int binarySearch(final int[] array, final int from, final int to, final int key) {
+    int low = from;
+    int high = to - 1;
+    while (low <= high) {
+      final int mid = (low + high) >>> 1;
+      if (array[mid] < key) {
+        low = mid + 1;
+      } else if (array[mid] > key) {
+        high = mid - 1;
+      } else {
+        return mid;
+      }
+    }
+    return -(low + 1);
+  }
+}
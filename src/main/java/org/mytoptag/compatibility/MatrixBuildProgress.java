@@ -0,0 +1,123 @@
+/*
+ * Copyright (c) 2018 Stanislav Myachenkov
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+
+package org.mytoptag.compatibility;
+
+import org.mytoptag.model.dto.response.CompatibilityProgressResponse;
+
+import java.util.Date;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+
+/**
+ * Progress of a running compatibility matrix build.
+ * Updated by the writer thread, read by any thread.
+ */
+public class MatrixBuildProgress {
+
+  private volatile boolean running;
+
+  private volatile boolean resumed;
+
+  private volatile long started;
+
+  private volatile int rowsTotal;
+
+  private volatile int rowsResumed;
+
+  private final AtomicInteger rowsDone = new AtomicInteger();
+
+  private final AtomicLong pairsWritten = new AtomicLong();
+
+  /**
+   * Start tracking a build.
+   *
+   * @param rowsTotal number of rows in the matrix
+   * @param rowsResumed number of rows completed by a previous interrupted build
+   */
+  public void start(final int rowsTotal, final int rowsResumed) {
+    this.rowsTotal = rowsTotal;
+    this.rowsResumed = rowsResumed;
+    this.resumed = rowsResumed > 0;
+    this.rowsDone.set(rowsResumed);
+    this.pairsWritten.set(0);
+    this.started = System.currentTimeMillis();
+    this.running = true;
+  }
+
+  /**
+   * Count a written row.
+   *
+   * @param pairs number of pairs in the row
+   */
+  public void rowDone(final int pairs) {
+    rowsDone(1, pairs);
+  }
+
+  /**
+   * Count written rows.
+   *
+   * @param rows number of rows
+   * @param pairs number of pairs in the rows
+   */
+  public void rowsDone(final int rows, final long pairs) {
+    rowsDone.addAndGet(rows);
+    pairsWritten.addAndGet(pairs);
+  }
+
+  /**
+   * Stop tracking current build.
+   */
+  public void finish() {
+    running = false;
+  }
+
+  /**
+   * Current progress. Throughput and ETA count rows of the current run only.
+   *
+   * @return {@link CompatibilityProgressResponse}
+   */
+  public CompatibilityProgressResponse snapshot() {
+    if (started == 0) {
+      return new CompatibilityProgressResponse(false, false, null, 0, 0, 0L, 0L, 0L, null);
+    }
+    final int done = rowsDone.get();
+    final long pairs = pairsWritten.get();
+    final long seconds = Math.max((System.currentTimeMillis() - started) / 1000, 1);
+    final long rowsPerSecond = (done - rowsResumed) / seconds;
+    final Long eta = running && rowsPerSecond > 0 ? (rowsTotal - done) / rowsPerSecond : null;
+    return new CompatibilityProgressResponse(
+        running,
+        resumed,
+        new Date(started),
+        rowsTotal,
+        done,
+        pairs,
+        rowsPerSecond,
+        pairs / seconds,
+        eta
+    );
+  }
+}
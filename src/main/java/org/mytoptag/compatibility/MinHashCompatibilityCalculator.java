@@ -0,0 +1,203 @@
+/*
+ * Copyright (c) 2018 Stanislav Myachenkov
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+
+
+package org.mytoptag.compatibility;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.function.IntConsumer;
+
+
+/**
+ * Approximate {@link CompatibilityCalculator}. Candidate pairs are the tags that share
+ * a locality-sensitive hashing bucket of MinHash signatures of their posts,
+ * compatibility is calculated exactly for candidates only.
+ * A pair with Jaccard similarity s becomes a candidate with probability 1 - (1 - s^rows)^bands,
+ * compatibility is containment rather than Jaccard similarity, so a small tag used mostly together
+ * with a large one is the pair most likely to be missed.
+ * Bands are hashed and indexed one at a time straight from posting lists, only buckets of two
+ * and more tags are kept: 8 bytes for every tag in such a bucket and 4 bytes per bucket,
+ * plus 8 bytes per tag while a band is indexed. See MinHashCompatibilityBenchmark for recall and speed.
+ */
+public class MinHashCompatibilityCalculator extends CompatibilityCalculator {
+
+  private static final long SEED = 42L;
+
+  private final int[] rowOffsets;
+
+  private final int[] rowBuckets;
+
+  private final int[] bucketOffsets;
+
+  private final int[] bucketRows;
+
+  /**
+   * Stamps of candidates already passed in a call, the last element is the stamp of the latest call.
+   */
+  private final ThreadLocal<int[]> marks;
+
+  /**
+   * Ctor.
+   *
+   * @param postingLists {@link PostingLists}
+   * @param topK max number of entries in a row, all entries are kept if not positive
+   * @param bands number of LSH bands
+   * @param rows number of MinHash values in a band
+   */
+  public MinHashCompatibilityCalculator(final PostingLists postingLists,
+                                        final int topK,
+                                        final int bands,
+                                        final int rows) {
+    super(postingLists, topK);
+    final int size = postingLists.size();
+    this.marks = ThreadLocal.withInitial(() -> new int[size + 1]);
+    final long[] seeds = seeds(bands * rows);
+    final long[] keys = new long[size];
+    final IntBuffer offsets = new IntBuffer();
+    final IntBuffer members = new IntBuffer();
+    offsets.add(0);
+    for (int band = 0; band < bands; band++) {
+      final int length = bandKeys(postingLists, seeds, band, rows, keys);
+      Arrays.sort(keys, 0, length);
+      for (int start = 0, end; start < length; start = end) {
+        end = start + 1;
+        while (end < length && keys[end] >>> Integer.SIZE == keys[start] >>> Integer.SIZE) {
+          end++;
+        }
+        if (end - start > 1) {
+          for (int i = start; i < end; i++) {
+            members.add((int) keys[i]);
+          }
+          offsets.add(members.length);
+        }
+      }
+    }
+    this.bucketOffsets = offsets.toArray();
+    this.bucketRows = members.toArray();
+    this.rowOffsets = new int[size + 1];
+    for (final int row : bucketRows) {
+      rowOffsets[row + 1]++;
+    }
+    for (int row = 0; row < size; row++) {
+      rowOffsets[row + 1] += rowOffsets[row];
+    }
+    this.rowBuckets = new int[bucketRows.length];
+    final int[] filled = Arrays.copyOf(rowOffsets, size);
+    for (int bucket = 0; bucket + 1 < bucketOffsets.length; bucket++) {
+      for (int i = bucketOffsets[bucket]; i < bucketOffsets[bucket + 1]; i++) {
+        rowBuckets[filled[bucketRows[i]]++] = bucket;
+      }
+    }
+  }
+
+  @Override
+  protected void forEachCandidate(final int row, final IntConsumer action) {
+    final int[] mark = marks.get();
+    final int stamp = ++mark[mark.length - 1];
+    for (int i = rowOffsets[row]; i < rowOffsets[row + 1]; i++) {
+      final int bucket = rowBuckets[i];
+      final int end = bucketOffsets[bucket + 1];
+      for (int j = Arrays.binarySearch(bucketRows, bucketOffsets[bucket], end, row) + 1; j < end; j++) {
+        final int column = bucketRows[j];
+        if (mark[column] != stamp) {
+          mark[column] = stamp;
+          action.accept(column);
+        }
+      }
+    }
+  }
+
+  /**
+   * Keys of rows with posts, hash of band signature values in high bits and row in low bits.
+   *
+   * @return number of keys
+   */
+  private static int bandKeys(final PostingLists postingLists, final long[] seeds, final int band,
+                              final int rows, final long[] keys) {
+    final int[] signature = new int[rows];
+    int length = 0;
+    for (int row = 0; row < postingLists.size(); row++) {
+      final int[] posts = postingLists.posts(row);
+      if (posts.length == 0) {
+        continue;
+      }
+      Arrays.fill(signature, Integer.MAX_VALUE);
+      for (final int post : posts) {
+        for (int i = 0; i < rows; i++) {
+          final int hash = (int) (mix(post ^ seeds[band * rows + i]) >>> Integer.SIZE);
+          if (hash < signature[i]) {
+            signature[i] = hash;
+          }
+        }
+      }
+      long hash = band;
+      for (final int value : signature) {
+        hash = mix(hash * 31 + value);
+      }
+      keys[length++] = hash & 0xFFFFFFFF00000000L | row;
+    }
+    return length;
+  }
+
+  private static long[] seeds(final int hashes) {
+    final SplittableRandom random = new SplittableRandom(SEED);
+    final long[] seeds = new long[hashes];
+    for (int i = 0; i < hashes; i++) {
+      seeds[i] = random.nextLong();
+    }
+    return seeds;
+  }
+
+  /**
+   * SplitMix64 finalizer.
+   */
+  private static long mix(final long value) {
+    long hash = value;
+    hash = (hash ^ hash >>> 30) * 0xBF58476D1CE4E5B9L;
+    hash = (hash ^ hash >>> 27) * 0x94D049BB133111EBL;
+    return hash ^ hash >>> 31;
+  }
+
+  /**
+   * Growing int array.
+   */
+  private static final class IntBuffer {
+
+    private int[] values = new int[1024];
+
+    private int length;
+
+    private void add(final int value) {
+      if (length == values.length) {
+        values = Arrays.copyOf(values, length * 2);
+      }
+      values[length++] = value;
+    }
+
+    private int[] toArray() {
+      return Arrays.copyOf(values, length);
+    }
+  }
+}
@@ -0,0 +1,225 @@
+/*
+ * Copyright (c) 2018 Stanislav Myachenkov
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+
+
+package org.mytoptag.compatibility;
+
+import java.util.BitSet;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+
+/**
+ * Calculates compatibility rows on a fork-join pool and hands them over
+ * to a single writer through a bounded queue.
+ */
+public class ParallelCompatibilityBuilder {
+
+  private static final long POLL_TIMEOUT_MS = 100;
+
+  private static final int TASKS_PER_THREAD = 16;
+
+  private final int parallelism;
+
+  private final int queueCapacity;
+
+  /**
+   * Ctor.
+   *
+   * @param parallelism number of calculating threads
+   * @param queueCapacity max number of calculated rows waiting for the writer
+   */
+  public ParallelCompatibilityBuilder(final int parallelism, final int queueCapacity) {
+    this.parallelism = Math.max(parallelism, 1);
+    this.queueCapacity = Math.max(queueCapacity, 1);
+  }
+
+  /**
+   * Calculate compatibility matrix. Writer is called on the current thread only,
+   * once for every row which is not completed, including empty ones.
+   *
+   * @param postingLists {@link PostingLists}
+   * @param calculator {@link CompatibilityCalculator} of posting lists rows
+   * @param completed rows to skip, calculated by a previous build
+   * @param writer consumer of calculated rows
+   * @return {@link MatrixBuildStatistics}
+   * @throws InterruptedException if current thread is interrupted while waiting for rows
+   */
+  public MatrixBuildStatistics build(final PostingLists postingLists,
+                                     final CompatibilityCalculator calculator,
+                                     final BitSet completed,
+                                     final Consumer<CompatibilityRow> writer)
+      throws InterruptedException {
+    final long start = System.currentTimeMillis();
+    final long[] weights = cumulativeWeights(postingLists, completed);
+    final long threshold = Math.max(weights[weights.length - 1] / (parallelism * TASKS_PER_THREAD), 1);
+    final BlockingQueue<CompatibilityRow> queue = new ArrayBlockingQueue<>(queueCapacity);
+    final AtomicBoolean cancelled = new AtomicBoolean();
+    final ForkJoinPool pool = new ForkJoinPool(parallelism);
+    int rows = 0;
+    long pairs = 0;
+    long writeMillis = 0;
+    long computeMillis = 0;
+    try {
+      final ForkJoinTask<Void> task = pool.submit(
+          new RowsTask(calculator, completed, weights, threshold, queue, cancelled, 0, postingLists.size())
+      );
+      while (true) {
+        final CompatibilityRow row = queue.poll(POLL_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        if (row != null) {
+          final long writeStart = System.currentTimeMillis();
+          writer.accept(row);
+          writeMillis += System.currentTimeMillis() - writeStart;
+          rows++;
+          pairs += row.getCompatibilities().size();
+        }
+        if (task.isDone()) {
+          if (computeMillis == 0) {
+            computeMillis = System.currentTimeMillis() - start;
+          }
+          if (row == null && queue.isEmpty()) {
+            break;
+          }
+        }
+      }
+      task.join();
+    } finally {
+      cancelled.set(true);
+      pool.shutdownNow();
+    }
+    return new MatrixBuildStatistics(rows, pairs, computeMillis, writeMillis);
+  }
+
+  /**
+   * Estimated cost of rows, cumulative. Row i is merged with every following row,
+   * so its cost is its own length times number of following rows plus their lengths.
+   * Completed rows cost nothing.
+   */
+  private static long[] cumulativeWeights(final PostingLists postingLists, final BitSet completed) {
+    final int size = postingLists.size();
+    final long[] weights = new long[size + 1];
+    long suffix = 0;
+    final long[] rowWeights = new long[size];
+    for (int i = size - 1; i >= 0; i--) {
+      rowWeights[i] = completed.get(i)
+          ? 0
+          : (long) postingLists.posts(i).length * (size - i - 1) + suffix + 1;
+      suffix += postingLists.posts(i).length;
+    }
+    for (int i = 0; i < size; i++) {
+      weights[i + 1] = weights[i] + rowWeights[i];
+    }
+    return weights;
+  }
+
+  /**
+   * Calculates a range of rows, splitting it in two halves of equal weight.
+   */
+  private static final class RowsTask extends RecursiveAction {
+
+    private final CompatibilityCalculator calculator;
+
+    private final BitSet completed;
+
+    private final long[] weights;
+
+    private final long threshold;
+
+    private final BlockingQueue<CompatibilityRow> queue;
+
+    private final AtomicBoolean cancelled;
+
+    private final int from;
+
+    private final int to;
+
+    RowsTask(final CompatibilityCalculator calculator,
+             final BitSet completed,
+             final long[] weights,
+             final long threshold,
+             final BlockingQueue<CompatibilityRow> queue,
+             final AtomicBoolean cancelled,
+             final int from,
+             final int to) {
+      this.calculator = calculator;
+      this.completed = completed;
+      this.weights = weights;
+      this.threshold = threshold;
+      this.queue = queue;
+      this.cancelled = cancelled;
+      this.from = from;
+      this.to = to;
+    }
+
+    @Override
+    protected void compute() {
+      if (to - from > 1 && weights[to] - weights[from] > threshold) {
+        final int middle = middle();
+        invokeAll(
+            new RowsTask(calculator, completed, weights, threshold, queue, cancelled, from, middle),
+            new RowsTask(calculator, completed, weights, threshold, queue, cancelled, middle, to)
+        );
+        return;
+      }
+      for (int row = completed.nextClearBit(from); row < to; row = completed.nextClearBit(row + 1)) {
+        publish(new CompatibilityRow(row, calculator.row(row)));
+      }
+    }
+
+    private int middle() {
+      final long half = weights[from] + (weights[to] - weights[from]) / 2;
+      int low = from + 1;
+      int high = to - 1;
+      while (low < high) {
+        final int mid = (low + high) >>> 1;
+        if (weights[mid] < half) {
+          low = mid + 1;
+        } else {
+          high = mid;
+        }
+      }
+      return low;
+    }
+
+    private void publish(final CompatibilityRow row) {
+      try {
+        while (!queue.offer(row, POLL_TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+          if (cancelled.get()) {
+            throw new CancellationException("compatibility matrix build is cancelled");
+          }
+        }
+      } catch (final InterruptedException ex) {
+        Thread.currentThread().interrupt();
+        throw new CancellationException("compatibility matrix build is interrupted");
+      }
+    }
+  }
+}
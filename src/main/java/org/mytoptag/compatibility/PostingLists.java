@@ -0,0 +1,167 @@
+/*
+ * Copyright (c) 2018 Stanislav Myachenkov
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+
+package org.mytoptag.compatibility;
+
+import java.util.Arrays;
+
+
+/**
+ * Posts of every tag as sorted primitive arrays.
+ * Rows are ordered by ascending tag id, posts of a row are sorted and distinct.
+ */
+public final class PostingLists {
+
+  private final int[] tags;
+
+  private final int[][] posts;
+
+  private PostingLists(final int[] tags, final int[][] posts) {
+    this.tags = tags;
+    this.posts = posts;
+  }
+
+  /**
+   * Number of tags.
+   *
+   * @return number of rows
+   */
+  public int size() {
+    return tags.length;
+  }
+
+  /**
+   * Tag id of a row.
+   *
+   * @param row row index
+   * @return tag id
+   */
+  public int tag(final int row) {
+    return tags[row];
+  }
+
+  /**
+   * Sorted distinct post ids of a row.
+   *
+   * @param row row index
+   * @return post ids, must not be modified
+   */
+  public int[] posts(final int row) {
+    return posts[row];
+  }
+
+  /**
+   * Row index of a tag.
+   *
+   * @param tag tag id
+   * @return row index or negative value if tag is absent
+   */
+  public int row(final int tag) {
+    return Arrays.binarySearch(tags, tag);
+  }
+
+  /**
+   * Total number of stored post ids.
+   *
+   * @return sum of all row lengths
+   */
+  public long postings() {
+    long result = 0;
+    for (final int[] row : posts) {
+      result += row.length;
+    }
+    return result;
+  }
+
+  /**
+   * {@link PostingLists} builder.
+   */
+  public static final class Builder {
+
+    private int[] tags;
+
+    private int[][] posts;
+
+    private int size;
+
+    /**
+     * Ctor.
+     *
+     * @param capacity expected number of tags
+     */
+    public Builder(final int capacity) {
+      this.tags = new int[Math.max(capacity, 1)];
+      this.posts = new int[Math.max(capacity, 1)][];
+    }
+
+    /**
+     * Add posts of a tag. The array is sorted and deduplicated in place.
+     *
+     * @param tag tag id
+     * @param tagPosts post ids in any order
+     * @return this builder
+     */
+    public Builder add(final int tag, final int[] tagPosts) {
+      if (size == tags.length) {
+        tags = Arrays.copyOf(tags, size * 2);
+        posts = Arrays.copyOf(posts, size * 2);
+      }
+      tags[size] = tag;
+      posts[size] = distinct(tagPosts);
+      size++;
+      return this;
+    }
+
+    /**
+     * Build posting lists.
+     *
+     * @return PostingLists ordered by tag id
+     */
+    public PostingLists build() {
+      final Integer[] order = new Integer[size];
+      for (int i = 0; i < size; i++) {
+        order[i] = i;
+      }
+      Arrays.sort(order, (a, b) -> Integer.compare(tags[a], tags[b]));
+      final int[] sortedTags = new int[size];
+      final int[][] sortedPosts = new int[size][];
+      for (int i = 0; i < size; i++) {
+        sortedTags[i] = tags[order[i]];
+        sortedPosts[i] = posts[order[i]];
+      }
+      return new PostingLists(sortedTags, sortedPosts);
+    }
+
+    private static int[] distinct(final int[] values) {
+      Arrays.sort(values);
+      int length = 0;
+      for (int i = 0; i < values.length; i++) {
+        if (i == 0 || values[i] != values[length - 1]) {
+          values[length++] = values[i];
+        }
+      }
+      return length == values.length ? values : Arrays.copyOf(values, length);
+    }
+  }
+}
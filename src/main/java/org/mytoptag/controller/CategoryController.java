@@ -24,9 +24,12 @@
 
 package org.mytoptag.controller;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.extern.slf4j.Slf4j;
 import org.mytoptag.model.dto.ListResponseEntity;
 import org.mytoptag.model.dto.request.CategorizedTagRequest;
+import org.mytoptag.model.dto.response.CategoryTagPageResponse;
 import org.mytoptag.service.CategoryService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.web.bind.annotation.CrossOrigin;
@@ -34,7 +37,12 @@ import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
 
 /**
  * Category controller.
@@ -50,14 +58,19 @@ public class CategoryController {
 
   private CategoryService categoryService;
 
+  private ObjectMapper objectMapper;
+
   /**
    * Ctor.
    *
    * @param categoryService {@link CategoryService}
+   * @param objectMapper {@link ObjectMapper}
    */
   @Autowired
-  public CategoryController(final CategoryService categoryService) {
+  public CategoryController(final CategoryService categoryService,
+                            final ObjectMapper objectMapper) {
     this.categoryService = categoryService;
+    this.objectMapper = objectMapper;
   }
 
   /**
@@ -98,4 +111,53 @@ public class CategoryController {
     return new ListResponseEntity(categoryService.getCategoryTags(title));
   }
 
+  /**
+   * List page of category tags.
+   *
+   * @param title title of a category
+   * @param cursor next page token of the previous page, absent for the first page
+   * @param size max number of tags in page
+   * @return page of tags in category with next page token
+   */
+  @RequestMapping(
+      value = "/{title}/page",
+      method = RequestMethod.GET
+    )
+  public CategoryTagPageResponse listCategoryPage(
+      @PathVariable("title") final String title,
+      @RequestParam(value = "cursor", required = false) final String cursor,
+      @RequestParam(value = "size", defaultValue = "100") final Integer size) {
+    return categoryService.getCategoryTagsPage(title, cursor, size);
+  }
+
+  /**
+   * Stream all category tags. Tags are written as they are read from the database cursor,
+   * the response has the same shape as {@link #listCategories(String)}.
+   *
+   * @param title title of a category
+   * @return response body writing tags in category
+   */
+  @RequestMapping(
+      value = "/{title}/stream",
+      method = RequestMethod.GET
+    )
+  public StreamingResponseBody streamCategory(@PathVariable("title") final String title) {
+    return outputStream -> {
+      try (JsonGenerator generator = objectMapper.getFactory().createGenerator(outputStream)) {
+        generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+        generator.writeStartObject();
+        generator.writeArrayFieldStart("data");
+        categoryService.streamCategoryTags(title, tag -> {
+          try {
+            generator.writeObject(tag);
+          } catch (final IOException exception) {
+            throw new UncheckedIOException(exception);
+          }
+        });
+        generator.writeEndArray();
+        generator.writeEndObject();
+      }
+    };
+  }
+
 }
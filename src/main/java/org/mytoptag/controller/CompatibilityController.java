@@ -0,0 +1,85 @@
+/*
+ * Copyright (c) 2018 Stanislav Myachenkov
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+
+package org.mytoptag.controller;
+
+import org.mytoptag.model.dto.response.CompatibilityProgressResponse;
+import org.mytoptag.service.SuggestionService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.web.bind.annotation.CrossOrigin;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RestController;
+
+/**
+ * Tag compatibility matrix controller.
+ */
+@RestController
+@CrossOrigin
+@RequestMapping(
+    value = "/compatibility",
+    produces = {"application/json"}
+    )
+public class CompatibilityController {
+
+  private SuggestionService suggestionService;
+
+  /**
+   * Ctor.
+   *
+   * @param suggestionService {@link SuggestionService}
+   */
+  @Autowired
+  public CompatibilityController(final SuggestionService suggestionService) {
+    this.suggestionService = suggestionService;
+  }
+
+  /**
+   * Start compatibility matrix update in background, resuming interrupted one if any.
+   *
+   * @return CompatibilityProgressResponse
+   */
+  @RequestMapping(
+      value = "/",
+      method = RequestMethod.POST
+  )
+  public CompatibilityProgressResponse update() {
+    suggestionService.updateCompatibilityMatrix();
+    return suggestionService.getCompatibilityMatrixProgress();
+  }
+
+  /**
+   * Get compatibility matrix update progress.
+   *
+   * @return CompatibilityProgressResponse
+   */
+  @RequestMapping(
+      value = "/",
+      method = RequestMethod.GET
+  )
+  public CompatibilityProgressResponse getProgress() {
+    return suggestionService.getCompatibilityMatrixProgress();
+  }
+
+}
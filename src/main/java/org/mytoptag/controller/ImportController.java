@@ -25,7 +25,9 @@
 package org.mytoptag.controller;
 
 import lombok.extern.slf4j.Slf4j;
+import org.mytoptag.http.InstagramHttpClient;
 import org.mytoptag.model.dto.request.ProfileListRequest;
+import org.mytoptag.model.dto.response.HttpClientStatisticsResponse;
 import org.mytoptag.model.dto.response.ImportProfileResponse;
 import org.mytoptag.service.ProfileImportService;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -49,14 +51,19 @@ public class ImportController {
 
   private ProfileImportService profileImportService;
 
+  private InstagramHttpClient httpClient;
+
   /**
    * Ctor.
    *
    * @param profileImportService {@link ProfileImportService}
+   * @param httpClient {@link InstagramHttpClient}
    */
   @Autowired
-  public ImportController(final ProfileImportService profileImportService) {
+  public ImportController(final ProfileImportService profileImportService,
+                          final InstagramHttpClient httpClient) {
     this.profileImportService = profileImportService;
+    this.httpClient = httpClient;
   }
 
   /**
@@ -88,4 +95,17 @@ public class ImportController {
     return profileImportService.getCurrentQueue();
   }
 
+  /**
+   * Get Instagram HTTP client statistics.
+   *
+   * @return {@link HttpClientStatisticsResponse}
+   */
+  @RequestMapping(
+      value = "/http/statistics",
+      method = RequestMethod.GET
+  )
+  public HttpClientStatisticsResponse getHttpClientStatistics() {
+    return httpClient.statistics();
+  }
+
 }
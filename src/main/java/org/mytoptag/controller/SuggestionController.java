@@ -24,15 +24,21 @@
 
 package org.mytoptag.controller;
 
+import org.mytoptag.exception.ServiceUnavailableException;
+import org.mytoptag.model.dto.CompatibleTagSuggestion;
 import org.mytoptag.model.dto.ListResponseEntity;
 import org.mytoptag.model.dto.TagSuggestion;
+import org.mytoptag.model.dto.response.CacheStatisticsResponse;
 import org.mytoptag.service.SuggestionService;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.TaskRejectedException;
 import org.springframework.web.bind.annotation.CrossOrigin;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestMethod;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.async.DeferredResult;
 
 import java.util.LinkedHashSet;
 import java.util.List;
@@ -50,6 +56,9 @@ public class SuggestionController {
 
   private SuggestionService suggestionService;
 
+  @Value("${suggestion.timeout.ms:3000}")
+  private Long timeout;
+
   /**
    * Ctor.
    *
@@ -62,17 +71,60 @@ public class SuggestionController {
 
 
   /**
-   * Get most relevant tags for current user's.
+   * Get most relevant tags for current user's. The lookup runs on suggestion executor,
+   * the response is 503 if executor is saturated or the lookup misses the deadline.
    *
    * @param search list of category strings
-   * @return list of {@link TagSuggestion}
+   * @return deferred list of {@link TagSuggestion}
    */
   @RequestMapping(
       value = "/{search}",
       method = RequestMethod.GET
   )
-  public ListResponseEntity getRecommendations(@PathVariable("search") final List<String> search) {
-    return new ListResponseEntity(suggestionService.getRecommendations(new LinkedHashSet<>(search)));
+  public DeferredResult<ListResponseEntity> getRecommendations(@PathVariable("search") final List<String> search) {
+    final DeferredResult<ListResponseEntity> result = new DeferredResult<>(timeout);
+    result.onTimeout(() -> result.setErrorResult(
+        new ServiceUnavailableException("suggestions are not ready in " + timeout + " ms")
+    ));
+    try {
+      suggestionService.getRecommendationsAsync(new LinkedHashSet<>(search)).whenComplete((tags, error) -> {
+        if (error == null) {
+          result.setResult(new ListResponseEntity(tags));
+        } else {
+          result.setErrorResult(error);
+        }
+      });
+    } catch (final TaskRejectedException exception) {
+      result.setErrorResult(new ServiceUnavailableException("too many suggestion requests"));
+    }
+    return result;
+  }
+
+  /**
+   * Get tags most compatible with user's tags.
+   *
+   * @param tags list of tag titles
+   * @return list of {@link CompatibleTagSuggestion}
+   */
+  @RequestMapping(
+      value = "/compatible/{tags}",
+      method = RequestMethod.GET
+  )
+  public ListResponseEntity getCompatibleRecommendations(@PathVariable("tags") final List<String> tags) {
+    return new ListResponseEntity(suggestionService.getCompatibleRecommendations(new LinkedHashSet<>(tags)));
+  }
+
+  /**
+   * Get recommendation cache statistics.
+   *
+   * @return {@link CacheStatisticsResponse}
+   */
+  @RequestMapping(
+      value = "/cache/statistics",
+      method = RequestMethod.GET
+  )
+  public CacheStatisticsResponse getCacheStatistics() {
+    return suggestionService.getRecommendationCacheStatistics();
   }
 
 }
@@ -26,6 +26,7 @@ package org.mytoptag.controller;
 
 import org.mytoptag.model.dto.ListResponseEntity;
 import org.mytoptag.service.InstagramTagService;
+import org.mytoptag.service.TagPrefixIndexService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.web.bind.annotation.CrossOrigin;
 import org.springframework.web.bind.annotation.PathVariable;
@@ -48,14 +49,19 @@ public class TagController {
 
   private InstagramTagService instagramTagService;
 
+  private TagPrefixIndexService tagPrefixIndexService;
+
   /**
    * Ctor.
    *
    * @param instagramTagService {@link InstagramTagService}
+   * @param tagPrefixIndexService {@link TagPrefixIndexService}
    */
   @Autowired
-  public TagController(final InstagramTagService instagramTagService) {
+  public TagController(final InstagramTagService instagramTagService,
+                       final TagPrefixIndexService tagPrefixIndexService) {
     this.instagramTagService = instagramTagService;
+    this.tagPrefixIndexService = tagPrefixIndexService;
   }
 
   /**
@@ -83,7 +89,21 @@ public class TagController {
       method = RequestMethod.GET
   )
   public ListResponseEntity addTag(@PathVariable("title") final Set<String> tags) {
-    return new ListResponseEntity(instagramTagService.addTag(tags));
+    return new ListResponseEntity(instagramTagService.addTagWithinTimeout(tags));
+  }
+
+  /**
+   * Complete tag title prefix from known tags.
+   *
+   * @param prefix tag title prefix
+   * @return list of tags starting with prefix, most popular first
+   */
+  @RequestMapping(
+      value = "/complete/{prefix}",
+      method = RequestMethod.GET
+  )
+  public ListResponseEntity completeTag(@PathVariable("prefix") final String prefix) {
+    return new ListResponseEntity(tagPrefixIndexService.complete(prefix));
   }
 
 }
@@ -0,0 +1,244 @@
+/*
+ * Copyright (c) 2018 Stanislav Myachenkov
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+
+
+package org.mytoptag.http;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.http.conn.ConnectionPoolTimeoutException;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.pool.PoolStats;
+import org.mytoptag.model.dto.response.HttpClientStatisticsResponse;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.ResourceAccessException;
+import org.springframework.web.client.RestClientException;
+import org.springframework.web.client.RestTemplate;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+
+/**
+ * Shared HTTP client for Instagram pages and searches.
+ * Connections are kept alive in a pool of max connections in total and max per host. Requests are
+ * spaced to the global rate limit, requests beyond the pool limits wait for a free connection,
+ * both waits are limited by connect timeout. Gzip responses are decompressed by the client.
+ */
+@Component
+@Slf4j
+public class InstagramHttpClient implements DisposableBean {
+
+  private final AtomicInteger active = new AtomicInteger();
+
+  private final AtomicInteger waiting = new AtomicInteger();
+
+  private final AtomicLong requests = new AtomicLong();
+
+  private final AtomicLong failures = new AtomicLong();
+
+  private final AtomicLong rejected = new AtomicLong();
+
+  private final AtomicLong latency = new AtomicLong();
+
+  private final PoolingHttpClientConnectionManager connectionManager;
+
+  private final CloseableHttpClient httpClient;
+
+  private final RestTemplate restTemplate;
+
+  private final RequestRateLimiter rateLimiter;
+
+  private final double requestsPerSecond;
+
+  private final int connectTimeout;
+
+  /**
+   * Ctor.
+   *
+   * @param maxConnections max number of pooled connections
+   * @param maxConnectionsPerHost max number of pooled connections of a host
+   * @param connectTimeout connect and connection wait timeout in milliseconds
+   * @param readTimeout read timeout in milliseconds
+   * @param requestsPerSecond max number of requests per second
+   * @param userAgent user agent header
+   */
+  public InstagramHttpClient(@Value("${http.client.max.connections:20}") final Integer maxConnections,
+                             @Value("${http.client.max.connections.per.host:5}") final Integer maxConnectionsPerHost,
+                             @Value("${http.client.connect.timeout.ms:5000}") final Integer connectTimeout,
+                             @Value("${http.client.read.timeout.ms:10000}") final Integer readTimeout,
+                             @Value("${http.client.requests.per.second:10}") final Double requestsPerSecond,
+                             @Value("${http.client.user.agent:Mozilla/5.0}") final String userAgent) {
+    this.connectTimeout = connectTimeout;
+    this.rateLimiter = new RequestRateLimiter(requestsPerSecond);
+    this.requestsPerSecond = requestsPerSecond;
+    this.connectionManager = new PoolingHttpClientConnectionManager();
+    this.connectionManager.setMaxTotal(maxConnections);
+    this.connectionManager.setDefaultMaxPerRoute(maxConnectionsPerHost);
+    this.httpClient = HttpClients.custom()
+        .setConnectionManager(connectionManager)
+        .setUserAgent(userAgent)
+        .build();
+    final HttpComponentsClientHttpRequestFactory requestFactory =
+        new HttpComponentsClientHttpRequestFactory(httpClient);
+    requestFactory.setConnectTimeout(connectTimeout);
+    requestFactory.setConnectionRequestTimeout(connectTimeout);
+    requestFactory.setReadTimeout(readTimeout);
+    this.restTemplate = new RestTemplate(requestFactory);
+  }
+
+  /**
+   * Get response body as string.
+   *
+   * @param url url template
+   * @param uriVariables url template variables
+   * @return response body
+   */
+  public String get(final String url, final Object... uriVariables) {
+    final URI uri = restTemplate.getUriTemplateHandler().expand(url, uriVariables);
+    return execute(uri, () -> restTemplate.getForObject(uri, String.class));
+  }
+
+  /**
+   * Read response body as it arrives. The reader may stop early, the rest of the body is discarded.
+   *
+   * @param url url template
+   * @param reader response body reader
+   * @param uriVariables url template variables
+   * @param <T> result type
+   * @return reader result
+   */
+  public <T> T get(final String url, final BodyReader<T> reader, final Object... uriVariables) {
+    final URI uri = restTemplate.getUriTemplateHandler().expand(url, uriVariables);
+    return execute(uri, () -> restTemplate.execute(
+        uri,
+        HttpMethod.GET,
+        null,
+        response -> reader.read(response.getBody())
+    ));
+  }
+
+  /**
+   * Get client statistics.
+   *
+   * @return {@link HttpClientStatisticsResponse}
+   */
+  public HttpClientStatisticsResponse statistics() {
+    final long total = requests.get();
+    final PoolStats pool = connectionManager.getTotalStats();
+    return new HttpClientStatisticsResponse(
+        pool.getMax(),
+        connectionManager.getDefaultMaxPerRoute(),
+        requestsPerSecond,
+        active.get(),
+        waiting.get() + pool.getPending(),
+        pool.getLeased(),
+        pool.getAvailable(),
+        total,
+        failures.get(),
+        rejected.get(),
+        total == 0 ? 0 : latency.get() / total
+    );
+  }
+
+  @Override
+  public void destroy() throws IOException {
+    httpClient.close();
+  }
+
+  /**
+   * Execute request holding a pooled connection until the response is read.
+   *
+   * @param uri request uri
+   * @param request request reading the whole response
+   * @param <T> response type
+   * @return response
+   */
+  private <T> T execute(final URI uri, final Supplier<T> request) {
+    throttle(uri);
+    active.incrementAndGet();
+    final long start = System.currentTimeMillis();
+    try {
+      return request.get();
+    } catch (final ResourceAccessException exception) {
+      if (exception.getCause() instanceof ConnectionPoolTimeoutException) {
+        rejected.incrementAndGet();
+        log.error("no free connection for {} in {} ms", uri.getHost(), connectTimeout);
+      } else {
+        failures.incrementAndGet();
+      }
+      throw exception;
+    } catch (final RestClientException exception) {
+      failures.incrementAndGet();
+      throw exception;
+    } finally {
+      requests.incrementAndGet();
+      latency.addAndGet(System.currentTimeMillis() - start);
+      active.decrementAndGet();
+    }
+  }
+
+  private void throttle(final URI uri) {
+    waiting.incrementAndGet();
+    try {
+      if (!rateLimiter.tryAcquire(connectTimeout)) {
+        rejected.incrementAndGet();
+        log.error("request rate limit for {} is exceeded", uri.getHost());
+        throw new ResourceAccessException("request rate limit is exceeded for " + uri.getHost());
+      }
+    } catch (final InterruptedException exception) {
+      Thread.currentThread().interrupt();
+      throw new ResourceAccessException("interrupted while waiting for request slot to " + uri.getHost());
+    } finally {
+      waiting.decrementAndGet();
+    }
+  }
+
+  /**
+   * Response body reader.
+   *
+   * @param <T> result type
+   */
+  @FunctionalInterface
+  public interface BodyReader<T> {
+
+    /**
+     * Read response body.
+     *
+     * @param body response body, decompressed
+     * @return result
+     * @throws IOException if body can not be read
+     */
+    T read(InputStream body) throws IOException;
+  }
+}
@@ -0,0 +1,72 @@
+/*
+ * Copyright (c) 2018 Stanislav Myachenkov
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+
+
+package org.mytoptag.http;
+
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * Rate limiter spacing requests evenly. Every request reserves the next free slot
+ * and sleeps until it comes, requests which would wait longer than a timeout are refused.
+ */
+final class RequestRateLimiter {
+
+  private final long interval;
+
+  private long next;
+
+  /**
+   * Ctor.
+   *
+   * @param requestsPerSecond max number of requests per second
+   */
+  RequestRateLimiter(final double requestsPerSecond) {
+    this.interval = (long) (TimeUnit.SECONDS.toNanos(1) / requestsPerSecond);
+    this.next = System.nanoTime();
+  }
+
+  /**
+   * Wait for a request slot.
+   *
+   * @param timeout max wait in milliseconds
+   * @return false if there is no free slot within timeout
+   * @throws InterruptedException if interrupted while waiting
+   */
+  boolean tryAcquire(final long timeout) throws InterruptedException {
+    final long wait;
+    synchronized (this) {
+      final long now = System.nanoTime();
+      final long slot = Math.max(next, now);
+      wait = slot - now;
+      if (wait > TimeUnit.MILLISECONDS.toNanos(timeout)) {
+        return false;
+      }
+      next = slot + interval;
+    }
+    TimeUnit.NANOSECONDS.sleep(wait);
+    return true;
+  }
+}
@@ -49,4 +49,7 @@ public class Compatibility {
   @Column(name = "compatibility")
   private Double compatibility;
 
+  @Column(name = "occurrence")
+  private Integer occurrence;
+
 }
@@ -26,14 +26,12 @@ package org.mytoptag.model.deserializer;
 
 import com.fasterxml.jackson.core.JsonParser;
 import com.fasterxml.jackson.databind.DeserializationContext;
-import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.deser.std.StdDeserializer;
 import org.mytoptag.model.dto.InstagramSearch;
 import org.mytoptag.model.dto.InstagramTagSearchResult;
 
 import java.io.IOException;
 import java.util.ArrayList;
-import java.util.Iterator;
 import java.util.List;
 
 /**
@@ -52,21 +50,8 @@ public class InstagramSearchDeserializer extends StdDeserializer<InstagramSearch
   @Override
   public InstagramSearch deserialize(final JsonParser parser, final DeserializationContext context)
       throws IOException {
-    final JsonNode node = parser.getCodec().readTree(parser);
-    final List<InstagramTagSearchResult> tags = parseTags(node);
+    final List<InstagramTagSearchResult> tags = InstagramSearchParser.readHashtags(parser);
     final List users = new ArrayList();
     return new InstagramSearch(users, tags);
   }
-
-  private List<InstagramTagSearchResult> parseTags(final JsonNode node) {
-    final List<InstagramTagSearchResult> result = new ArrayList<>();
-    for (Iterator<JsonNode> it = node.get("hashtags").elements(); it.hasNext();) {
-      final JsonNode tagNode = it.next().get("hashtag");
-      final String name = tagNode.get("name").asText();
-      final Long igId = tagNode.get("id").asLong();
-      final Long count = tagNode.get("media_count").longValue();
-      result.add(new InstagramTagSearchResult(name, igId, count));
-    }
-    return result;
-  }
 }
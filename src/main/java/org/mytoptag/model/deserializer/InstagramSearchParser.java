@@ -0,0 +1,160 @@
+/*
+ * Copyright (c) 2018 Stanislav Myachenkov
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+
+
+package org.mytoptag.model.deserializer;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import org.mytoptag.model.dto.InstagramTagSearchResult;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Predicate;
+
+/**
+ * Streaming parser of instagram search response.
+ * Reads hashtags token by token, users, places and unknown fields are skipped without building a tree.
+ */
+public final class InstagramSearchParser {
+
+  private static final String HASHTAGS = "hashtags";
+
+  private static final String HASHTAG = "hashtag";
+
+  private static final String NAME = "name";
+
+  private static final String ID = "id";
+
+  private static final String MEDIA_COUNT = "media_count";
+
+  private InstagramSearchParser() {
+  }
+
+  /**
+   * Read all hashtags of search response.
+   *
+   * @param parser parser before or at the start of response object
+   * @return list of {@link InstagramTagSearchResult} in response order
+   * @throws IOException if response is malformed
+   */
+  public static List<InstagramTagSearchResult> readHashtags(final JsonParser parser) throws IOException {
+    final List<InstagramTagSearchResult> result = new ArrayList<>();
+    readHashtags(parser, tag -> {
+      result.add(tag);
+      return false;
+    });
+    return result;
+  }
+
+  /**
+   * Find hashtag with exact title, the rest of response is not read once it is found.
+   *
+   * @param parser parser before or at the start of response object
+   * @param title hashtag title
+   * @return {@link InstagramTagSearchResult}, null if response has no such hashtag
+   * @throws IOException if response is malformed
+   */
+  public static InstagramTagSearchResult findHashtag(final JsonParser parser, final String title) throws IOException {
+    final InstagramTagSearchResult[] found = new InstagramTagSearchResult[1];
+    readHashtags(parser, tag -> {
+      if (title.equals(tag.getTitle())) {
+        found[0] = tag;
+        return true;
+      }
+      return false;
+    });
+    return found[0];
+  }
+
+  /**
+   * Pass hashtags to a consumer until it returns true.
+   *
+   * @param parser parser before or at the start of response object
+   * @param consumer hashtag consumer, returns true to stop reading
+   * @throws IOException if response is malformed
+   */
+  private static void readHashtags(final JsonParser parser,
+                                   final Predicate<InstagramTagSearchResult> consumer) throws IOException {
+    if (!parser.hasCurrentToken()) {
+      parser.nextToken();
+    }
+    expect(parser, JsonToken.START_OBJECT);
+    while (parser.nextToken() == JsonToken.FIELD_NAME) {
+      final String field = parser.getCurrentName();
+      if (parser.nextToken() == JsonToken.START_ARRAY && HASHTAGS.equals(field)) {
+        while (parser.nextToken() == JsonToken.START_OBJECT) {
+          final InstagramTagSearchResult tag = readEntry(parser);
+          if (tag != null && consumer.test(tag)) {
+            return;
+          }
+        }
+        expect(parser, JsonToken.END_ARRAY);
+      } else {
+        parser.skipChildren();
+      }
+    }
+  }
+
+  private static InstagramTagSearchResult readEntry(final JsonParser parser) throws IOException {
+    InstagramTagSearchResult result = null;
+    while (parser.nextToken() == JsonToken.FIELD_NAME) {
+      final String field = parser.getCurrentName();
+      if (parser.nextToken() == JsonToken.START_OBJECT && HASHTAG.equals(field)) {
+        result = readHashtag(parser);
+      } else {
+        parser.skipChildren();
+      }
+    }
+    expect(parser, JsonToken.END_OBJECT);
+    return result;
+  }
+
+  private static InstagramTagSearchResult readHashtag(final JsonParser parser) throws IOException {
+    final InstagramTagSearchResult result = new InstagramTagSearchResult();
+    while (parser.nextToken() == JsonToken.FIELD_NAME) {
+      final String field = parser.getCurrentName();
+      parser.nextToken();
+      if (NAME.equals(field)) {
+        result.setTitle(parser.getValueAsString());
+      } else if (ID.equals(field)) {
+        result.setIgId(parser.getValueAsLong());
+      } else if (MEDIA_COUNT.equals(field)) {
+        result.setCount(parser.getValueAsLong());
+      } else {
+        parser.skipChildren();
+      }
+    }
+    expect(parser, JsonToken.END_OBJECT);
+    return result;
+  }
+
+  private static void expect(final JsonParser parser, final JsonToken token) throws IOException {
+    if (parser.currentToken() != token) {
+      throw new IOException("unexpected " + parser.currentToken() + " instead of " + token
+          + " at " + parser.getCurrentLocation());
+    }
+  }
+}
@@ -35,7 +35,7 @@ import org.mytoptag.model.dto.query.TagCategorySuggestionQueryResult;
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
-public class TagSuggestion {
+public class TagSuggestion implements TagCategorySuggestionQueryResult {
 
   private String tag;
 
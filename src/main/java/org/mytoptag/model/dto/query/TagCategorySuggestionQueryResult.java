@@ -25,7 +25,7 @@
 package org.mytoptag.model.dto.query;
 
 /**
- * Tag suggestion query result for CategoryRepository#findRelevantTags response.
+ * Tag suggestion query result for CategoryRepository#getAllCategoryTags response.
  */
 public interface TagCategorySuggestionQueryResult {
 
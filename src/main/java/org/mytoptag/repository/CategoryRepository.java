@@ -25,7 +25,9 @@
 package org.mytoptag.repository;
 
 import org.mytoptag.model.Category;
+import org.mytoptag.model.dto.query.CategoryTagQueryResult;
 import org.mytoptag.model.dto.query.TagCategorySuggestionQueryResult;
+import org.mytoptag.model.dto.query.TermTagCategorySuggestionQueryResult;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
@@ -38,7 +40,7 @@ import java.util.List;
 /**
  * {@link Category} repository.
  */
-public interface CategoryRepository extends JpaRepository<Category, Integer> {
+public interface CategoryRepository extends JpaRepository<Category, Integer>, CategoryRepositoryCustom {
 
   /**
    * Find category by title.
@@ -81,27 +83,93 @@ public interface CategoryRepository extends JpaRepository<Category, Integer> {
   List<TagCategorySuggestionQueryResult> getCategoryTags(@Param("title")String title);
 
   /**
-   * Find relevant tags and categories.
+   * Get page of category tags following a position in (sort order, tag id) order.
    *
-   * @param search search query for category title
-   * @return list of {@link TagCategorySuggestionQueryResult}
+   * @param title exact category title
+   * @param sortOrder sort order of the last returned row
+   * @param tagId tag id of the last returned row
+   * @param size max number of rows
+   * @return list of {@link CategoryTagQueryResult}
    */
   @Query(
       value = "select \n"
+          + " cat.title \"category\",\n"
+          + " t.title \"tag\",\n"
+          + " tic.sort_order \"sortOrder\",\n"
+          + " tic.tag_id \"tagId\"\n"
+          + "from\n"
+          + "category cat \n"
+          + "join tagincategory tic\n"
+          + " on tic.category_id = cat.id\n"
+          + "join tag t\n"
+          + " on tic.tag_id = t.id\n"
+          + "where cat.title = :title\n"
+          + " and (tic.sort_order, tic.tag_id) > (:sortOrder, :tagId)\n"
+          + "order by tic.sort_order asc, tic.tag_id asc\n"
+          + "limit :size",
+      nativeQuery = true
+  )
+  List<CategoryTagQueryResult> getCategoryTagsAfter(@Param("title") String title,
+                                                    @Param("sortOrder") Integer sortOrder,
+                                                    @Param("tagId") Integer tagId,
+                                                    @Param("size") Integer size);
+
+  /**
+   * Find relevant tags and categories of several search terms in one query.
+   * Every term matches its first categories by title that have tags.
+   *
+   * @param terms search queries for category title
+   * @param categories max number of category titles per term
+   * @return list of {@link TermTagCategorySuggestionQueryResult}
+   */
+  @Query(
+      value = "select \n"
+          + " s.term \"term\",\n"
           + " cat.title \"category\",\n"
           + " t.title \"tag\", \n"
           + " tic.sort_order \"sortOrder\"\n"
           + "from\n"
-          + "category cat \n"
+          + "unnest(array[:terms]) with ordinality s(term, ord)\n"
+          + "cross join lateral (\n"
+          + " select distinct c.title\n"
+          + " from category c\n"
+          + " join tagincategory ctic\n"
+          + "  on ctic.category_id = c.id\n"
+          + " where c.title like '%' || s.term || '%'\n"
+          + " order by c.title asc\n"
+          + " limit :categories\n"
+          + ") matched\n"
+          + "join category cat\n"
+          + " on cat.title = matched.title\n"
           + "join tagincategory tic\n"
           + " on tic.category_id = cat.id\n"
           + "join tag t\n"
           + " on tic.tag_id = t.id\n"
-          + "where cat.title like %:search% \n"
-          + "order by cat.title asc, tic.sort_order asc",
+          + "order by s.ord asc, cat.title asc, tic.sort_order asc",
+      nativeQuery = true
+  )
+  List<TermTagCategorySuggestionQueryResult> findRelevantTagsOfTerms(@Param("terms") List<String> terms,
+                                                                     @Param("categories") Integer categories);
+
+  /**
+   * Get tags of every category.
+   *
+   * @return list of {@link TagCategorySuggestionQueryResult}
+   */
+  @Query(
+      value = "select \n"
+          + " cat.title \"category\",\n"
+          + " t.title \"tag\",\n"
+          + " tic.sort_order \"sortOrder\"\n"
+          + "from\n"
+          + "category cat \n"
+          + "join tagincategory tic\n"
+          + " on tic.category_id = cat.id\n"
+          + "join tag t\n"
+          + " on tic.tag_id = t.id",
       nativeQuery = true
   )
-  List<TagCategorySuggestionQueryResult> findRelevantTags(@Param("search") String search);
+  List<TagCategorySuggestionQueryResult> getAllCategoryTags();
 
   /**
    * Clear category table.
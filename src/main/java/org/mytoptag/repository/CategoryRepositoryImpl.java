@@ -0,0 +1,85 @@
+/*
+ * Copyright (c) 2018 Stanislav Myachenkov
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+
+
+package org.mytoptag.repository;
+
+import org.mytoptag.model.dto.TagSuggestion;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.function.Consumer;
+
+
+/**
+ * {@link CategoryRepositoryCustom} implementation.
+ */
+public class CategoryRepositoryImpl implements CategoryRepositoryCustom {
+
+  private static final String SELECT_CATEGORY_TAGS = "select cat.title, t.title, tic.sort_order\n"
+      + " from category cat\n"
+      + " join tagincategory tic\n"
+      + "   on tic.category_id = cat.id\n"
+      + " join tag t\n"
+      + "   on tic.tag_id = t.id\n"
+      + " where cat.title = ?\n"
+      + " order by tic.sort_order asc, tic.tag_id asc";
+
+  private JdbcTemplate jdbcTemplate;
+
+  @Value("${category.fetch.size:1000}")
+  private Integer fetchSize;
+
+  /**
+   * Ctor.
+   *
+   * @param jdbcTemplate {@link JdbcTemplate}
+   */
+  @Autowired
+  public CategoryRepositoryImpl(final JdbcTemplate jdbcTemplate) {
+    this.jdbcTemplate = jdbcTemplate;
+  }
+
+  /**
+   * Read tags of a category with a forward-only {@link JdbcCursor}.
+   *
+   * @param title exact category title
+   * @param consumer consumer of every row, rows are not retained
+   */
+  @Override
+  @Transactional(readOnly = true)
+  public void streamCategoryTags(final String title, final Consumer<TagSuggestion> consumer) {
+    JdbcCursor.query(
+        jdbcTemplate,
+        SELECT_CATEGORY_TAGS,
+        fetchSize,
+        resultSet -> consumer.accept(
+            new TagSuggestion(resultSet.getString(2), resultSet.getString(1), resultSet.getInt(3))
+        ),
+        title
+    );
+  }
+}
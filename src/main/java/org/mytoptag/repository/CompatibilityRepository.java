@@ -25,34 +25,26 @@
 package org.mytoptag.repository;
 
 import org.mytoptag.model.Compatibility;
+import org.mytoptag.model.dto.query.SourceTagSuggestionQueryResult;
 import org.mytoptag.model.dto.query.TagSuggestionQueryResult;
 import org.springframework.data.jpa.repository.JpaRepository;
-import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 
 import java.util.List;
-import javax.transaction.Transactional;
 
 
 /**
  * {@link Compatibility} repository.
  */
-public interface CompatibilityRepository extends JpaRepository<Compatibility, Integer> {
-
-  /**
-   * Clear compatibility matrix.
-   */
-  @Modifying
-  @Transactional
-  @Query(value = "truncate table COMPATIBILITY", nativeQuery = true)
-  void clearCompatibilityMatrix();
-
+public interface CompatibilityRepository
+    extends JpaRepository<Compatibility, Integer>, CompatibilityRepositoryCustom {
 
   /**
    * Get posts with max compatibility.
    *
    * @param tagIds list of tag id's
+   * @param limit max number of results
    * @return list of {@link TagSuggestionQueryResult}
    */
   @Query(value =
@@ -69,8 +61,37 @@ public interface CompatibilityRepository extends JpaRepository<Compatibility, In
           + "  c.tag_a in :ids\n"
           + "group by t.title, c.compatibility\n"
           + "order by c.compatibility desc\n"
-          + "limit 30",
+          + "limit :limit",
+      nativeQuery = true)
+  List<TagSuggestionQueryResult> getCompatibleTags(@Param("ids") List<Integer> tagIds,
+                                                   @Param("limit") Integer limit);
+
+  /**
+   * Get tags with max compatibility of every source tag.
+   *
+   * @param tagIds list of source tag id's
+   * @param limit max number of results per source tag
+   * @return list of {@link SourceTagSuggestionQueryResult}
+   */
+  @Query(value =
+          "select\n"
+          + "  s.id source,\n"
+          + "  t.title,\n"
+          + "  c.compatibility,\n"
+          + "  (select max(tc.count) from tagcount tc where tc.tag_id = c.tag_b) count\n"
+          + "from unnest(array[:ids]) s(id)\n"
+          + "cross join lateral (\n"
+          + "  select p.tag_b, p.compatibility\n"
+          + "  from compatibility p\n"
+          + "  where p.tag_a = s.id\n"
+          + "    and exists (select 1 from tagcount tc where tc.tag_id = p.tag_b)\n"
+          + "  order by p.compatibility desc, p.tag_b asc\n"
+          + "  limit :limit\n"
+          + ") c\n"
+          + "join tag t\n"
+          + "  on t.id = c.tag_b",
       nativeQuery = true)
-  List<TagSuggestionQueryResult> getCompatibleTags(@Param("ids") List<Integer> tagIds);
+  List<SourceTagSuggestionQueryResult> getCompatibleTagsOfSources(@Param("ids") List<Integer> tagIds,
+                                                                  @Param("limit") Integer limit);
 
 }
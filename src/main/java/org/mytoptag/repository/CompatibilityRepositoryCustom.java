@@ -0,0 +1,138 @@
+/*
+ * Copyright (c) 2018 Stanislav Myachenkov
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+
+
+package org.mytoptag.repository;
+
+import org.mytoptag.compatibility.CompatibilityIndex;
+import org.mytoptag.compatibility.MatrixBuildMode;
+import org.mytoptag.compatibility.MatrixBuildStatistics;
+import org.mytoptag.compatibility.TagRange;
+import org.mytoptag.model.CompatibilityKey;
+
+import java.util.List;
+import java.util.Map;
+
+
+/**
+ * Custom {@link org.mytoptag.model.Compatibility} repository methods.
+ */
+public interface CompatibilityRepositoryCustom {
+
+  /**
+   * Add occurrence deltas to tag totals and tag pairs and recalculate
+   * compatibility of every tag with changed total.
+   * A pair delta is added to the stored row of the pair in either orientation.
+   *
+   * @param tagOccurrences number of new posts by tag id
+   * @param pairOccurrences number of new posts by tag pair, lower tag id first
+   * @param insertPairs whether pairs absent in the matrix are inserted, otherwise their deltas are skipped
+   */
+  void addOccurrences(Map<Integer, Integer> tagOccurrences, Map<CompatibilityKey, Integer> pairOccurrences,
+                      boolean insertPairs);
+
+  /**
+   * Create empty staging table without indexes and constraints, dropping previous one
+   * and its checkpoint.
+   *
+   * @param table staging table name
+   */
+  void createStagingTable(String table);
+
+  /**
+   * Prepare staging table of an interrupted build for resuming:
+   * delete rows written after the last checkpoint.
+   *
+   * @param table staging table name
+   * @return tag ids of checkpointed rows, empty if there is nothing to resume
+   */
+  List<Integer> resumeStagingTable(String table);
+
+  /**
+   * Record rows of tags as durably written to staging table.
+   *
+   * @param tags tag ids of written rows
+   */
+  void addCheckpoint(List<Integer> tags);
+
+  /**
+   * Split tags without checkpoint in ranges of ascending tag ids with about the same number of posts.
+   *
+   * @param postingsPerRange number of tag posts after which a range is closed
+   * @return list of {@link TagRange}
+   */
+  List<TagRange> splitUncheckpointedTags(long postingsPerRange);
+
+  /**
+   * Count co-occurrence of tags of a range with every following tag in the database,
+   * write compatibility rows of the tags without checkpoint to staging table
+   * and record their checkpoint in the same transaction.
+   *
+   * @param table staging table name
+   * @param range {@link TagRange}
+   * @param minSupport min number of common posts of a written pair
+   * @param topK max number of written pairs per tag, 0 for all pairs
+   * @return {@link MatrixBuildStatistics} of the range
+   */
+  MatrixBuildStatistics insertCompatibilityRange(String table, TagRange range, int minSupport, int topK);
+
+  /**
+   * Drop checkpoint, create compatibility indexes and constraints on staging table
+   * and count posts of every tag into staging occurrence table.
+   *
+   * @param table staging table name
+   */
+  void indexStagingTable(String table);
+
+  /**
+   * Atomically replace compatibility and tag occurrence tables with staging tables
+   * and record mode of the build.
+   *
+   * @param table staging table name
+   * @param mode {@link MatrixBuildMode} of the build that filled staging table
+   */
+  void replaceWithStagingTable(String table, MatrixBuildMode mode);
+
+  /**
+   * Mode of the build that produced current compatibility matrix.
+   *
+   * @return {@link MatrixBuildMode}
+   */
+  MatrixBuildMode getBuildMode();
+
+  /**
+   * Version of compatibility matrix, changed by every {@link #replaceWithStagingTable(String, MatrixBuildMode)}.
+   *
+   * @return compatibility table oid
+   */
+  long getCompatibilityVersion();
+
+  /**
+   * Read compatibility matrix with tag titles and counts with a forward-only cursor.
+   *
+   * @return {@link CompatibilityIndex}
+   */
+  CompatibilityIndex loadCompatibilityIndex();
+
+}
@@ -0,0 +1,383 @@
+/*
+ * Copyright (c) 2018 Stanislav Myachenkov
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+
+
+package org.mytoptag.repository;
+
+import org.mytoptag.compatibility.CompatibilityIndex;
+import org.mytoptag.compatibility.MatrixBuildMode;
+import org.mytoptag.compatibility.MatrixBuildStatistics;
+import org.mytoptag.compatibility.TagRange;
+import org.mytoptag.model.CompatibilityKey;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+
+/**
+ * {@link CompatibilityRepositoryCustom} implementation.
+ */
+public class CompatibilityRepositoryImpl implements CompatibilityRepositoryCustom {
+
+  private static final String UPSERT_TAG_OCCURRENCE =
+      "insert into tagoccurrence (tag_id, occurrence)\n"
+      + "values (?, ?)\n"
+      + "on conflict (tag_id) do update\n"
+      + "  set occurrence = tagoccurrence.occurrence + excluded.occurrence";
+
+  private static final String UPSERT_PAIR_OCCURRENCE =
+      "insert into compatibility (tag_a, tag_b, occurrence, compatibility)\n"
+      + "values (?, ?, ?, 0)\n"
+      + "on conflict ((greatest(tag_a, tag_b)), (least(tag_a, tag_b))) do update\n"
+      + "  set occurrence = compatibility.occurrence + excluded.occurrence";
+
+  private static final String UPDATE_PAIR_OCCURRENCE =
+      "update compatibility\n"
+      + "  set occurrence = occurrence + ?\n"
+      + "where greatest(tag_a, tag_b) = ?\n"
+      + "  and least(tag_a, tag_b) = ?";
+
+  private static final String UPDATE_COMPATIBILITY =
+      "update compatibility c\n"
+      + "  set compatibility = round(c.occurrence::numeric / o.occurrence, 5)\n"
+      + "from tagoccurrence o\n"
+      + "where o.tag_id = c.tag_a\n"
+      + "  and c.tag_a in (:ids)";
+
+  private static final String[] CREATE_STAGING_TABLE = {
+      "truncate table compatibilitycheckpoint",
+      "drop table if exists %1$s",
+      "create table %1$s (like compatibility including defaults)"
+  };
+
+  private static final String STAGING_TABLE_EXISTS =
+      "select to_regclass(:table) is not null";
+
+  private static final String DELETE_UNCHECKPOINTED_ROWS =
+      "delete from %1$s s\n"
+      + "where not exists (\n"
+      + "  select 1 from compatibilitycheckpoint c where c.tag_id = s.tag_a\n"
+      + ")";
+
+  private static final String SELECT_CHECKPOINT =
+      "select tag_id from compatibilitycheckpoint";
+
+  private static final String INSERT_CHECKPOINT =
+      "insert into compatibilitycheckpoint (tag_id) values (?)";
+
+  private static final String SELECT_UNCHECKPOINTED_POSTINGS =
+      "select t.tag_id, count(*)\n"
+      + "from taginpost t\n"
+      + "where not exists (\n"
+      + "  select 1 from compatibilitycheckpoint c where c.tag_id = t.tag_id\n"
+      + ")\n"
+      + "group by t.tag_id\n"
+      + "order by t.tag_id";
+
+  private static final String INSERT_COMPATIBILITY_RANGE =
+      "insert into %1$s (tag_a, tag_b, compatibility, occurrence)\n"
+      + "select p.tag_a, p.tag_b, round(p.occurrence::numeric / o.occurrence, 5), p.occurrence\n"
+      + "from (\n"
+      + "  select a.tag_id tag_a, b.tag_id tag_b, count(distinct a.post_id) occurrence,\n"
+      + "    row_number() over (\n"
+      + "      partition by a.tag_id order by count(distinct a.post_id) desc, b.tag_id\n"
+      + "    ) as pair_rank\n"
+      + "  from taginpost a\n"
+      + "  join taginpost b\n"
+      + "    on b.post_id = a.post_id\n"
+      + "   and b.tag_id > a.tag_id\n"
+      + "  where a.tag_id >= :from\n"
+      + "    and a.tag_id < :to\n"
+      + "    and not exists (select 1 from compatibilitycheckpoint c where c.tag_id = a.tag_id)\n"
+      + "  group by a.tag_id, b.tag_id\n"
+      + "  having count(distinct a.post_id) >= :support\n"
+      + ") p\n"
+      + "join (\n"
+      + "  select tag_id, count(distinct post_id) occurrence\n"
+      + "  from taginpost\n"
+      + "  where tag_id >= :from\n"
+      + "    and tag_id < :to\n"
+      + "  group by tag_id\n"
+      + ") o\n"
+      + "  on o.tag_id = p.tag_a\n"
+      + "where :topK = 0 or p.pair_rank <= :topK";
+
+  private static final String CHECKPOINT_RANGE =
+      "insert into compatibilitycheckpoint (tag_id)\n"
+      + "select distinct t.tag_id\n"
+      + "from taginpost t\n"
+      + "where t.tag_id >= :from\n"
+      + "  and t.tag_id < :to\n"
+      + "  and not exists (select 1 from compatibilitycheckpoint c where c.tag_id = t.tag_id)";
+
+  private static final String[] INDEX_STAGING_TABLE = {
+      "truncate table compatibilitycheckpoint",
+      "alter table %1$s add constraint %1$s_pkey primary key (tag_a, tag_b)",
+      "create unique index %1$s_icomp on %1$s (greatest(tag_a, tag_b), least(tag_a, tag_b))",
+      "alter table %1$s add constraint %1$s_tag_a_fkey foreign key (tag_a) references tag(id)",
+      "alter table %1$s add constraint %1$s_tag_b_fkey foreign key (tag_b) references tag(id)",
+      "drop table if exists %1$s_occurrence",
+      "create table %1$s_occurrence (like tagoccurrence including defaults)",
+      "insert into %1$s_occurrence (tag_id, occurrence)\n"
+          + "select tag_id, count(distinct post_id)\n"
+          + "from taginpost\n"
+          + "group by tag_id",
+      "alter table %1$s_occurrence add constraint %1$s_occurrence_pkey primary key (tag_id)",
+      "alter table %1$s_occurrence add constraint %1$s_occurrence_tag_id_fkey foreign key (tag_id) references tag(id)"
+  };
+
+  private static final String[] REPLACE_WITH_STAGING_TABLE = {
+      "drop table compatibility",
+      "alter table %1$s rename to compatibility",
+      "alter index %1$s_icomp rename to icomp",
+      "alter table compatibility rename constraint %1$s_pkey to compatibility_pkey",
+      "alter table compatibility rename constraint %1$s_tag_a_fkey to compatibility_tag_a_fkey",
+      "alter table compatibility rename constraint %1$s_tag_b_fkey to compatibility_tag_b_fkey",
+      "drop table tagoccurrence",
+      "alter table %1$s_occurrence rename to tagoccurrence",
+      "alter table tagoccurrence rename constraint %1$s_occurrence_pkey to tagoccurrence_pkey",
+      "alter table tagoccurrence rename constraint %1$s_occurrence_tag_id_fkey to tagoccurrence_tag_id_fkey"
+  };
+
+  private static final String UPDATE_BUILD_MODE =
+      "update compatibilitybuild\n"
+      + "  set engine = ?, top_k = ?, min_support = ?, build_date = now()";
+
+  private static final String SELECT_BUILD_MODE =
+      "select engine, top_k, min_support from compatibilitybuild";
+
+  private static final String SELECT_COUNTED_TAGS =
+      "select t.id, t.title, max(tc.count)\n"
+      + "from tag t\n"
+      + "join tagcount tc\n"
+      + "  on tc.tag_id = t.id\n"
+      + "group by t.id, t.title";
+
+  private static final String SELECT_COMPATIBILITY_VERSION =
+      "select 'compatibility'::regclass::oid";
+
+  private static final String SELECT_COMPATIBILITY =
+      "select tag_a, tag_b, compatibility\n"
+      + "from compatibility\n"
+      + "order by tag_a";
+
+  private NamedParameterJdbcTemplate jdbcTemplate;
+
+  @Value("${spring.jpa.properties.hibernate.jdbc.batch_size}")
+  private Integer maxBatchSize;
+
+  @Value("${compatibility.fetch.size:1000}")
+  private Integer fetchSize;
+
+  /**
+   * Ctor.
+   *
+   * @param jdbcTemplate {@link NamedParameterJdbcTemplate}
+   */
+  @Autowired
+  public CompatibilityRepositoryImpl(final NamedParameterJdbcTemplate jdbcTemplate) {
+    this.jdbcTemplate = jdbcTemplate;
+  }
+
+  @Override
+  public void addOccurrences(final Map<Integer, Integer> tagOccurrences,
+                             final Map<CompatibilityKey, Integer> pairOccurrences,
+                             final boolean insertPairs) {
+    final List<Integer> tags = tagOccurrences.keySet().stream().sorted().collect(Collectors.toList());
+    jdbcTemplate.getJdbcOperations().batchUpdate(
+        UPSERT_TAG_OCCURRENCE,
+        tags,
+        maxBatchSize,
+        (statement, tag) -> {
+          statement.setInt(1, tag);
+          statement.setInt(2, tagOccurrences.get(tag));
+        }
+    );
+    final List<CompatibilityKey> pairs = new ArrayList<>(pairOccurrences.keySet());
+    pairs.sort(Comparator.comparing(CompatibilityKey::getTagA).thenComparing(CompatibilityKey::getTagB));
+    if (insertPairs) {
+      jdbcTemplate.getJdbcOperations().batchUpdate(
+          UPSERT_PAIR_OCCURRENCE,
+          pairs,
+          maxBatchSize,
+          (statement, pair) -> {
+            statement.setInt(1, pair.getTagA());
+            statement.setInt(2, pair.getTagB());
+            statement.setInt(3, pairOccurrences.get(pair));
+          }
+      );
+    } else {
+      jdbcTemplate.getJdbcOperations().batchUpdate(
+          UPDATE_PAIR_OCCURRENCE,
+          pairs,
+          maxBatchSize,
+          (statement, pair) -> {
+            statement.setInt(1, pairOccurrences.get(pair));
+            statement.setInt(2, pair.getTagB());
+            statement.setInt(3, pair.getTagA());
+          }
+      );
+    }
+    for (int i = 0; i < tags.size(); i += maxBatchSize) {
+      jdbcTemplate.update(
+          UPDATE_COMPATIBILITY,
+          new MapSqlParameterSource("ids", tags.subList(i, Math.min(i + maxBatchSize, tags.size())))
+      );
+    }
+  }
+
+  @Override
+  public void createStagingTable(final String table) {
+    execute(CREATE_STAGING_TABLE, table);
+  }
+
+  @Override
+  public List<Integer> resumeStagingTable(final String table) {
+    final Boolean exists = jdbcTemplate.queryForObject(
+        STAGING_TABLE_EXISTS,
+        new MapSqlParameterSource("table", table),
+        Boolean.class
+    );
+    if (!Boolean.TRUE.equals(exists)) {
+      return new ArrayList<>();
+    }
+    final List<Integer> tags = jdbcTemplate.getJdbcOperations().queryForList(SELECT_CHECKPOINT, Integer.class);
+    if (!tags.isEmpty()) {
+      jdbcTemplate.getJdbcOperations().update(String.format(DELETE_UNCHECKPOINTED_ROWS, table));
+    }
+    return tags;
+  }
+
+  @Override
+  public void addCheckpoint(final List<Integer> tags) {
+    jdbcTemplate.getJdbcOperations().batchUpdate(
+        INSERT_CHECKPOINT,
+        tags,
+        maxBatchSize,
+        (statement, tag) -> statement.setInt(1, tag)
+    );
+  }
+
+  @Override
+  @Transactional(readOnly = true)
+  public List<TagRange> splitUncheckpointedTags(final long postingsPerRange) {
+    final List<TagRange> ranges = new ArrayList<>();
+    final int[] range = new int[3];
+    final long[] postings = new long[1];
+    query(SELECT_UNCHECKPOINTED_POSTINGS, resultSet -> {
+      final int tag = resultSet.getInt(1);
+      if (range[2] > 0 && postings[0] >= postingsPerRange) {
+        ranges.add(new TagRange(range[0], tag, range[2]));
+        range[2] = 0;
+        postings[0] = 0;
+      }
+      if (range[2] == 0) {
+        range[0] = tag;
+      }
+      range[1] = tag;
+      range[2]++;
+      postings[0] += resultSet.getLong(2);
+    });
+    if (range[2] > 0) {
+      ranges.add(new TagRange(range[0], range[1] + 1, range[2]));
+    }
+    return ranges;
+  }
+
+  @Override
+  @Transactional
+  public MatrixBuildStatistics insertCompatibilityRange(final String table, final TagRange range,
+                                                        final int minSupport, final int topK) {
+    final long start = System.currentTimeMillis();
+    final MapSqlParameterSource parameters = new MapSqlParameterSource()
+        .addValue("from", range.getFrom())
+        .addValue("to", range.getTo())
+        .addValue("support", minSupport)
+        .addValue("topK", topK);
+    final int pairs = jdbcTemplate.update(String.format(INSERT_COMPATIBILITY_RANGE, table), parameters);
+    final int tags = jdbcTemplate.update(CHECKPOINT_RANGE, parameters);
+    return new MatrixBuildStatistics(tags, pairs, System.currentTimeMillis() - start, 0);
+  }
+
+  @Override
+  public void indexStagingTable(final String table) {
+    execute(INDEX_STAGING_TABLE, table);
+  }
+
+  @Override
+  @Transactional
+  public void replaceWithStagingTable(final String table, final MatrixBuildMode mode) {
+    execute(REPLACE_WITH_STAGING_TABLE, table);
+    jdbcTemplate.getJdbcOperations().update(UPDATE_BUILD_MODE, mode.getEngine(), mode.getTopK(), mode.getMinSupport());
+  }
+
+  @Override
+  public MatrixBuildMode getBuildMode() {
+    return jdbcTemplate.getJdbcOperations().queryForObject(
+        SELECT_BUILD_MODE,
+        (resultSet, row) -> new MatrixBuildMode(resultSet.getString(1), resultSet.getInt(2), resultSet.getInt(3))
+    );
+  }
+
+  @Override
+  public long getCompatibilityVersion() {
+    return jdbcTemplate.getJdbcOperations().queryForObject(SELECT_COMPATIBILITY_VERSION, Long.class);
+  }
+
+  @Override
+  @Transactional(readOnly = true)
+  public CompatibilityIndex loadCompatibilityIndex() {
+    final CompatibilityIndex.Builder builder = new CompatibilityIndex.Builder();
+    query(SELECT_COUNTED_TAGS, resultSet -> builder.tag(
+        resultSet.getInt(1),
+        resultSet.getString(2),
+        resultSet.getInt(3)
+    ));
+    query(SELECT_COMPATIBILITY, resultSet -> builder.pair(
+        resultSet.getInt(1),
+        resultSet.getInt(2),
+        resultSet.getDouble(3)
+    ));
+    return builder.build();
+  }
+
+  private void query(final String sql, final RowCallbackHandler handler) {
+    JdbcCursor.query(jdbcTemplate.getJdbcOperations(), sql, fetchSize, handler);
+  }
+
+  private void execute(final String[] statements, final String table) {
+    for (final String statement : statements) {
+      jdbcTemplate.getJdbcOperations().execute(String.format(statement, table));
+    }
+  }
+}
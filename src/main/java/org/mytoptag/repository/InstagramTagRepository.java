@@ -37,7 +37,7 @@ import javax.transaction.Transactional;
 /**
  * {@link InstagramTag} repository.
  */
-public interface InstagramTagRepository extends JpaRepository<InstagramTag, Integer> {
+public interface InstagramTagRepository extends JpaRepository<InstagramTag, Integer>, InstagramTagRepositoryCustom {
 
   /**
    * Find tag by title.
@@ -0,0 +1,97 @@
+/*
+ * Copyright (c) 2018 Stanislav Myachenkov
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+
+
+package org.mytoptag.repository;
+
+import org.mytoptag.model.InstagramTag;
+import org.mytoptag.tag.TagPrefixIndex;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.List;
+
+
+/**
+ * {@link InstagramTagRepositoryCustom} implementation.
+ */
+public class InstagramTagRepositoryImpl implements InstagramTagRepositoryCustom {
+
+  private static final String SELECT_TAG_COUNTS = "select t.title, latest.count\n"
+      + " from tag t\n"
+      + " left join (\n"
+      + "   select distinct on (tc.tag_id) tc.tag_id, tc.count\n"
+      + "   from tagcount tc\n"
+      + "   order by tc.tag_id, tc.count_date desc, tc.id desc) latest\n"
+      + " on latest.tag_id = t.id";
+
+  private static final String INSERT_TAG = "insert into tag (title, ig_id) values (?, ?)\n"
+      + " on conflict (title) do nothing";
+
+  private JdbcTemplate jdbcTemplate;
+
+  @Value("${spring.jpa.properties.hibernate.jdbc.batch_size}")
+  private Integer maxBatchSize;
+
+  @Value("${tag.completion.fetch.size:10000}")
+  private Integer fetchSize;
+
+  /**
+   * Ctor.
+   *
+   * @param jdbcTemplate {@link JdbcTemplate}
+   */
+  @Autowired
+  public InstagramTagRepositoryImpl(final JdbcTemplate jdbcTemplate) {
+    this.jdbcTemplate = jdbcTemplate;
+  }
+
+  @Override
+  @Transactional(readOnly = true)
+  public TagPrefixIndex loadPrefixIndex() {
+    final TagPrefixIndex.Builder builder = new TagPrefixIndex.Builder(fetchSize);
+    JdbcCursor.query(
+        jdbcTemplate,
+        SELECT_TAG_COUNTS,
+        fetchSize,
+        resultSet -> builder.add(resultSet.getString(1), (Long) resultSet.getObject(2))
+    );
+    return builder.build();
+  }
+
+  @Override
+  public void insertTags(final List<InstagramTag> tags) {
+    jdbcTemplate.batchUpdate(
+        INSERT_TAG,
+        tags,
+        maxBatchSize,
+        (statement, tag) -> {
+          statement.setString(1, tag.getTitle());
+          statement.setLong(2, tag.getIgId());
+        }
+    );
+  }
+}
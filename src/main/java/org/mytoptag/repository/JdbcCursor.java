@@ -0,0 +1,73 @@
+/*
+ * Copyright (c) 2018 Stanislav Myachenkov
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+
+package org.mytoptag.repository;
+
+import org.springframework.jdbc.core.ArgumentPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcOperations;
+import org.springframework.jdbc.core.RowCallbackHandler;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+
+
+/**
+ * Queries read with a forward-only cursor, so rows are handled without being retained.
+ * Postgres fetches rows in chunks of fetch size only inside a transaction,
+ * callers must run in one.
+ */
+final class JdbcCursor {
+
+  private JdbcCursor() {
+  }
+
+  /**
+   * Read query rows with a forward-only cursor.
+   *
+   * @param jdbcOperations {@link JdbcOperations}
+   * @param sql query
+   * @param fetchSize number of rows fetched at once
+   * @param handler handler of every row
+   * @param args query arguments
+   */
+  static void query(final JdbcOperations jdbcOperations,
+                    final String sql,
+                    final int fetchSize,
+                    final RowCallbackHandler handler,
+                    final Object... args) {
+    jdbcOperations.query(
+        connection -> {
+          final PreparedStatement statement = connection.prepareStatement(
+              sql,
+              ResultSet.TYPE_FORWARD_ONLY,
+              ResultSet.CONCUR_READ_ONLY
+          );
+          statement.setFetchSize(fetchSize);
+          new ArgumentPreparedStatementSetter(args).setValues(statement);
+          return statement;
+        },
+        handler
+    );
+  }
+}
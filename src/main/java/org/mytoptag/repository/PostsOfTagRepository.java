@@ -30,5 +30,6 @@ import org.springframework.data.jpa.repository.JpaRepository;
 /**
  * {@link PostsOfTag} repository.
  */
-public interface PostsOfTagRepository extends JpaRepository<PostsOfTag, Integer> {
+public interface PostsOfTagRepository
+    extends JpaRepository<PostsOfTag, Integer>, PostsOfTagRepositoryCustom {
 }
@@ -0,0 +1,128 @@
+/*
+ * Copyright (c) 2018 Stanislav Myachenkov
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+
+
+package org.mytoptag.repository;
+
+import lombok.extern.slf4j.Slf4j;
+import org.mytoptag.compatibility.PostingLists;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.List;
+import java.util.stream.Collectors;
+
+
+/**
+ * {@link PostsOfTagRepositoryCustom} implementation.
+ */
+@Slf4j
+public class PostsOfTagRepositoryImpl implements PostsOfTagRepositoryCustom {
+
+  private static final String SELECT_POSTS_OF_TAGS = "select tag, posts from postsoftag";
+
+  private static final int BYTES_IN_MB = 1024 * 1024;
+
+  private JdbcTemplate jdbcTemplate;
+
+  @Value("${compatibility.fetch.size:1000}")
+  private Integer fetchSize;
+
+  /**
+   * Ctor.
+   *
+   * @param jdbcTemplate {@link JdbcTemplate}
+   */
+  @Autowired
+  public PostsOfTagRepositoryImpl(final JdbcTemplate jdbcTemplate) {
+    this.jdbcTemplate = jdbcTemplate;
+  }
+
+  /**
+   * Read posts of all tags with a forward-only {@link JdbcCursor}.
+   *
+   * @return {@link PostingLists}
+   */
+  @Override
+  @Transactional(readOnly = true)
+  public PostingLists loadPostingLists() {
+    final List<MemoryPoolMXBean> heapPools = ManagementFactory.getMemoryPoolMXBeans().stream()
+        .filter(pool -> pool.getType() == MemoryType.HEAP)
+        .collect(Collectors.toList());
+    heapPools.forEach(MemoryPoolMXBean::resetPeakUsage);
+    final PostingLists.Builder builder = new PostingLists.Builder(fetchSize);
+    JdbcCursor.query(
+        jdbcTemplate,
+        SELECT_POSTS_OF_TAGS,
+        fetchSize,
+        resultSet -> builder.add(resultSet.getInt(1), parseArray(resultSet.getString(2)))
+    );
+    final PostingLists postingLists = builder.build();
+    log.info("loaded posts of {} tags, {} MB of posting lists, peak heap usage {} MB",
+        postingLists.size(),
+        postingLists.postings() * Integer.BYTES / BYTES_IN_MB,
+        heapPools.stream().mapToLong(pool -> pool.getPeakUsage().getUsed()).sum() / BYTES_IN_MB);
+    return postingLists;
+  }
+
+  /**
+   * Parse text representation of postgres int array like <code>{1,2,3}</code>.
+   *
+   * @param text array text
+   * @return array values
+   */
+  private static int[] parseArray(final String text) {
+    if (text == null || text.length() <= 2) {
+      return new int[0];
+    }
+    int size = 1;
+    for (int i = 1; i < text.length() - 1; i++) {
+      if (text.charAt(i) == ',') {
+        size++;
+      }
+    }
+    final int[] result = new int[size];
+    int index = 0;
+    int value = 0;
+    boolean negative = false;
+    for (int i = 1; i < text.length(); i++) {
+      final char ch = text.charAt(i);
+      if (ch == ',' || ch == '}') {
+        result[index++] = negative ? -value : value;
+        value = 0;
+        negative = false;
+      } else if (ch == '-') {
+        negative = true;
+      } else {
+        value = value * 10 + (ch - '0');
+      }
+    }
+    return result;
+  }
+}
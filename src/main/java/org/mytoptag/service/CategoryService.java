@@ -27,8 +27,10 @@ package org.mytoptag.service;
 import org.mytoptag.model.Category;
 import org.mytoptag.model.dto.TagSuggestion;
 import org.mytoptag.model.dto.request.CategorizedTag;
+import org.mytoptag.model.dto.response.CategoryTagPageResponse;
 
 import java.util.List;
+import java.util.function.Consumer;
 
 
 /**
@@ -56,4 +58,22 @@ public interface CategoryService {
    */
   List<TagSuggestion> getCategoryTags(String title);
 
+  /**
+   * Get page of category tags ordered by sort order and tag id.
+   *
+   * @param title title of category
+   * @param cursor token of the previous page, null for the first page
+   * @param size max number of tags in page
+   * @return {@link CategoryTagPageResponse} with token of the next page, null if it is the last page
+   */
+  CategoryTagPageResponse getCategoryTagsPage(String title, String cursor, Integer size);
+
+  /**
+   * Pass every tag of a category to a consumer without retaining them.
+   *
+   * @param title title of category
+   * @param consumer consumer of {@link TagSuggestion} in sort order
+   */
+  void streamCategoryTags(String title, Consumer<TagSuggestion> consumer);
+
 }
@@ -0,0 +1,55 @@
+/*
+ * Copyright (c) 2018 Stanislav Myachenkov
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+
+package org.mytoptag.service;
+
+import org.mytoptag.category.CategorySnapshot;
+
+import java.util.Optional;
+
+
+/**
+ * In-memory category tags snapshot service.
+ */
+public interface CategorySnapshotService {
+
+  /**
+   * Load category snapshot in background on startup.
+   */
+  void load();
+
+  /**
+   * Rebuild category snapshot from repository in background and publish it,
+   * unless a snapshot requested later has already been published.
+   */
+  void reload();
+
+  /**
+   * Get current category snapshot.
+   *
+   * @return {@link CategorySnapshot}, empty while snapshot is not loaded
+   */
+  Optional<CategorySnapshot> getSnapshot();
+
+}
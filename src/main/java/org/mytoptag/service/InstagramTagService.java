@@ -56,13 +56,21 @@ public interface InstagramTagService {
   List<InstagramTag> getTags(final Set<String> names) throws ObjectNotFoundException;
 
   /**
-   * Saves list of tags to repository.
+   * Saves list of tags to repository, waits until all absent tags are retrieved from Instagram.
    *
    * @param tags List of tag names
    * @return List of InstagramTag entries
    */
   List<InstagramTag> addTag(Set<String> tags);
 
+  /**
+   * Saves list of tags to repository, tags not retrieved from Instagram in time are saved in background.
+   *
+   * @param tags List of tag names
+   * @return List of InstagramTag entries retrieved in time
+   */
+  List<InstagramTag> addTagWithinTimeout(Set<String> tags);
+
   /**
    * Updates history for all tags in repository.
    */
@@ -24,10 +24,15 @@
 
 package org.mytoptag.service;
 
+import org.mytoptag.model.InstagramPost;
+import org.mytoptag.model.dto.CompatibleTagSuggestion;
 import org.mytoptag.model.dto.TagSuggestion;
+import org.mytoptag.model.dto.response.CacheStatisticsResponse;
+import org.mytoptag.model.dto.response.CompatibilityProgressResponse;
 
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 
 
 /**
@@ -40,6 +45,25 @@ public interface SuggestionService {
    */
   void updateCompatibilityMatrix();
 
+  /**
+   * Resume compatibility matrix update interrupted by a restart, if any.
+   */
+  void resumeCompatibilityMatrix();
+
+  /**
+   * Get progress of current or last compatibility matrix update.
+   *
+   * @return {@link CompatibilityProgressResponse}
+   */
+  CompatibilityProgressResponse getCompatibilityMatrixProgress();
+
+  /**
+   * Add new posts to tag compatibility matrix.
+   *
+   * @param posts list of saved {@link InstagramPost}
+   */
+  void addToCompatibilityMatrix(final List<InstagramPost> posts);
+
 
   /**
    * Get recommended tags based on users input.
@@ -49,4 +73,32 @@ public interface SuggestionService {
    */
   List<TagSuggestion> getRecommendations(final Set<String> tagNames);
 
+  /**
+   * Get recommended tags based on users input on suggestion executor.
+   *
+   * @param tagNames set of users tags
+   * @return future of relevant tags
+   */
+  CompletableFuture<List<TagSuggestion>> getRecommendationsAsync(Set<String> tagNames);
+
+  /**
+   * Get tags compatible with users tags, ranked by compatibility and popularity.
+   *
+   * @param tagNames set of users tags
+   * @return List of {@link CompatibleTagSuggestion}
+   */
+  List<CompatibleTagSuggestion> getCompatibleRecommendations(final Set<String> tagNames);
+
+  /**
+   * Drop cached recommendations, called after every category snapshot change.
+   */
+  void invalidateRecommendations();
+
+  /**
+   * Get recommendation cache statistics.
+   *
+   * @return {@link CacheStatisticsResponse}
+   */
+  CacheStatisticsResponse getRecommendationCacheStatistics();
+
 }
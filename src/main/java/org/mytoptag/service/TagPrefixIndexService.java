@@ -0,0 +1,67 @@
+/*
+ * Copyright (c) 2018 Stanislav Myachenkov
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+
+
+package org.mytoptag.service;
+
+import org.mytoptag.model.dto.TagCompletion;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+
+/**
+ * In-memory tag title prefix index service.
+ */
+public interface TagPrefixIndexService {
+
+  /**
+   * Load prefix index in background on startup.
+   */
+  void load();
+
+  /**
+   * Complete tag title prefix.
+   *
+   * @param prefix title prefix, leading <code>#</code> is ignored
+   * @return list of {@link TagCompletion} by descending latest count, empty while index is not loaded
+   */
+  List<TagCompletion> complete(String prefix);
+
+  /**
+   * Add tags to index or update their counts.
+   *
+   * @param counts latest counts by tag title
+   */
+  void putTags(Map<String, Long> counts);
+
+  /**
+   * Remove tags from index.
+   *
+   * @param titles tag titles
+   */
+  void removeTags(Collection<String> titles);
+
+}
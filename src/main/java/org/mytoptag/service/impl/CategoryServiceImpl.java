@@ -25,22 +25,28 @@
 package org.mytoptag.service.impl;
 
 import lombok.extern.slf4j.Slf4j;
+import org.mytoptag.category.CategoryTagCursor;
+import org.mytoptag.exception.BadRequestException;
 import org.mytoptag.model.Category;
 import org.mytoptag.model.CategoryTag;
 import org.mytoptag.model.CategoryTagKey;
 import org.mytoptag.model.InstagramTag;
 import org.mytoptag.model.dto.TagSuggestion;
+import org.mytoptag.model.dto.query.CategoryTagQueryResult;
 import org.mytoptag.model.dto.request.CategorizedTag;
+import org.mytoptag.model.dto.response.CategoryTagPageResponse;
 import org.mytoptag.repository.CategoryRepository;
 import org.mytoptag.repository.CategoryTagRepository;
 import org.mytoptag.repository.InstagramTagRepository;
 import org.mytoptag.service.CategoryService;
+import org.mytoptag.service.CategorySnapshotService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
 import java.util.Collections;
 import java.util.List;
 import java.util.Optional;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
 /**
@@ -50,26 +56,33 @@ import java.util.stream.Collectors;
 @Slf4j
 public class CategoryServiceImpl implements CategoryService {
 
+  private static final int MAX_PAGE_SIZE = 1000;
+
   private CategoryRepository categoryRepository;
 
   private InstagramTagRepository tagRepository;
 
   private CategoryTagRepository categoryTagRepository;
 
+  private CategorySnapshotService categorySnapshotService;
+
   /**
    * Ctor.
    *
    * @param categoryRepository     {@link CategoryRepository}
    * @param categoryTagRepository  {@link CategoryTagRepository}
    * @param instagramTagRepository {@link InstagramTagRepository}
+   * @param categorySnapshotService {@link CategorySnapshotService}
    */
   @Autowired
   public CategoryServiceImpl(final CategoryRepository categoryRepository,
                              final InstagramTagRepository instagramTagRepository,
-                             final CategoryTagRepository categoryTagRepository) {
+                             final CategoryTagRepository categoryTagRepository,
+                             final CategorySnapshotService categorySnapshotService) {
     this.categoryRepository = categoryRepository;
     this.tagRepository = instagramTagRepository;
     this.categoryTagRepository = categoryTagRepository;
+    this.categorySnapshotService = categorySnapshotService;
   }
 
   @Override
@@ -112,20 +125,47 @@ public class CategoryServiceImpl implements CategoryService {
           }
         }
     );
-
+    categorySnapshotService.reload();
   }
 
   @Override
   public List<TagSuggestion> getCategoryTags(final String title) {
-    return categoryRepository.getCategoryTags(title)
-        .stream()
-        .map(TagSuggestion::new)
-        .collect(Collectors.toList());
+    return categorySnapshotService.getSnapshot()
+        .map(snapshot -> snapshot.tags(title))
+        .orElseGet(() -> categoryRepository.getCategoryTags(title)
+            .stream()
+            .map(TagSuggestion::new)
+            .collect(Collectors.toList()));
+  }
+
+  @Override
+  public CategoryTagPageResponse getCategoryTagsPage(final String title, final String cursor, final Integer size) {
+    if (size < 1 || size > MAX_PAGE_SIZE) {
+      throw new BadRequestException("page size must be between 1 and " + MAX_PAGE_SIZE);
+    }
+    final CategoryTagCursor position = CategoryTagCursor.decode(cursor);
+    final List<CategoryTagQueryResult> rows = categoryRepository.getCategoryTagsAfter(
+        title, position.getSortOrder(), position.getTagId(), size + 1
+    );
+    if (rows.size() <= size) {
+      return new CategoryTagPageResponse(rows.stream().map(TagSuggestion::new).collect(Collectors.toList()), null);
+    }
+    final CategoryTagQueryResult last = rows.get(size - 1);
+    return new CategoryTagPageResponse(
+        rows.subList(0, size).stream().map(TagSuggestion::new).collect(Collectors.toList()),
+        new CategoryTagCursor(last.getSortOrder(), last.getTagId()).encode()
+    );
+  }
+
+  @Override
+  public void streamCategoryTags(final String title, final Consumer<TagSuggestion> consumer) {
+    categoryRepository.streamCategoryTags(title, consumer);
   }
 
   @Override
   public void clear() {
     categoryTagRepository.clear();
     categoryRepository.clear();
+    categorySnapshotService.reload();
   }
 }
@@ -0,0 +1,108 @@
+/*
+ * Copyright (c) 2018 Stanislav Myachenkov
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+
+package org.mytoptag.service.impl;
+
+import lombok.extern.slf4j.Slf4j;
+import org.mytoptag.category.CategorySnapshot;
+import org.mytoptag.category.CategorySnapshotEvent;
+import org.mytoptag.repository.CategoryRepository;
+import org.mytoptag.service.CategorySnapshotService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Async;
+import org.springframework.stereotype.Service;
+
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+
+/**
+ * {@link CategorySnapshotService} implementation.
+ */
+@Service
+@Slf4j
+public class CategorySnapshotServiceImpl implements CategorySnapshotService {
+
+  private final AtomicReference<CategorySnapshot> snapshot = new AtomicReference<>();
+
+  private final AtomicLong requested = new AtomicLong();
+
+  private long published;
+
+  private CategoryRepository categoryRepository;
+
+  private ApplicationEventPublisher eventPublisher;
+
+  /**
+   * Ctor.
+   *
+   * @param categoryRepository {@link CategoryRepository}
+   * @param eventPublisher {@link ApplicationEventPublisher}
+   */
+  @Autowired
+  public CategorySnapshotServiceImpl(final CategoryRepository categoryRepository,
+                                     final ApplicationEventPublisher eventPublisher) {
+    this.categoryRepository = categoryRepository;
+    this.eventPublisher = eventPublisher;
+  }
+
+  @Override
+  @Async("processExecutor")
+  @EventListener(ApplicationReadyEvent.class)
+  public void load() {
+    rebuild();
+  }
+
+  @Override
+  @Async("processExecutor")
+  public void reload() {
+    rebuild();
+  }
+
+  @Override
+  public Optional<CategorySnapshot> getSnapshot() {
+    return Optional.ofNullable(snapshot.get());
+  }
+
+  private void rebuild() {
+    final long sequence = requested.incrementAndGet();
+    final long start = System.currentTimeMillis();
+    final CategorySnapshot built = CategorySnapshot.of(categoryRepository.getAllCategoryTags());
+    synchronized (this) {
+      if (sequence < published) {
+        log.info("category snapshot {} is dropped, snapshot {} is already published", sequence, published);
+        return;
+      }
+      snapshot.set(built);
+      published = sequence;
+    }
+    log.info("category snapshot {} with {} categories has been built in {} ms",
+        sequence, built.size(), System.currentTimeMillis() - start);
+    eventPublisher.publishEvent(new CategorySnapshotEvent(built));
+  }
+}
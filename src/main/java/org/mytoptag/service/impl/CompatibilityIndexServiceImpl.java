@@ -0,0 +1,154 @@
+/*
+ * Copyright (c) 2018 Stanislav Myachenkov
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+
+
+package org.mytoptag.service.impl;
+
+import lombok.extern.slf4j.Slf4j;
+import org.mytoptag.compatibility.CompatibilityIndex;
+import org.mytoptag.compatibility.CompatibilityIndexSnapshot;
+import org.mytoptag.model.dto.query.SourceTagSuggestionQueryResult;
+import org.mytoptag.model.dto.query.TagSuggestionQueryResult;
+import org.mytoptag.repository.CompatibilityRepository;
+import org.mytoptag.service.CompatibilityIndexService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Async;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+
+/**
+ * {@link CompatibilityIndexService} implementation.
+ */
+@Service
+@Slf4j
+public class CompatibilityIndexServiceImpl implements CompatibilityIndexService {
+
+  private static final int MAX_COMPATIBLE_TAGS = 30;
+
+  private final AtomicReference<CompatibilityIndex> index = new AtomicReference<>();
+
+  private CompatibilityRepository compatibilityRepository;
+
+  @Value("${compatibility.snapshot.path:#{systemProperties['java.io.tmpdir']}/mytoptag/compatibility.idx}")
+  private String snapshotPath;
+
+  /**
+   * Ctor.
+   *
+   * @param compatibilityRepository {@link CompatibilityRepository}
+   */
+  @Autowired
+  public CompatibilityIndexServiceImpl(final CompatibilityRepository compatibilityRepository) {
+    this.compatibilityRepository = compatibilityRepository;
+  }
+
+  /**
+   * Open compatibility index snapshot on startup,
+   * load index from repository if snapshot is absent or stale.
+   */
+  @Override
+  @Async("processExecutor")
+  @EventListener(ApplicationReadyEvent.class)
+  public void load() {
+    if (!snapshotPath.isEmpty()) {
+      final long start = System.currentTimeMillis();
+      try {
+        final CompatibilityIndex snapshot = CompatibilityIndexSnapshot.open(
+            Paths.get(snapshotPath),
+            compatibilityRepository.getCompatibilityVersion()
+        );
+        if (snapshot != null) {
+          index.set(snapshot);
+          log.info("compatibility index with {} pairs has been opened from {} in {} ms",
+              snapshot.pairs(), snapshotPath, System.currentTimeMillis() - start);
+          return;
+        }
+      } catch (final IOException ex) {
+        log.error("failed to open compatibility index snapshot {}", snapshotPath, ex);
+      }
+    }
+    reload();
+  }
+
+  /**
+   * Load compatibility index from repository, replace current one and write its snapshot.
+   */
+  @Override
+  public void reload() {
+    final long start = System.currentTimeMillis();
+    final long version = compatibilityRepository.getCompatibilityVersion();
+    final CompatibilityIndex loaded = compatibilityRepository.loadCompatibilityIndex();
+    index.set(loaded);
+    log.info("compatibility index with {} pairs has been loaded in {} ms",
+        loaded.pairs(), System.currentTimeMillis() - start);
+    if (!snapshotPath.isEmpty()) {
+      try {
+        CompatibilityIndexSnapshot.write(loaded, version, Paths.get(snapshotPath));
+      } catch (final IOException ex) {
+        log.error("failed to write compatibility index snapshot {}", snapshotPath, ex);
+      }
+    }
+  }
+
+  /**
+   * Get at most 30 tags with max compatibility from in-memory index,
+   * or from repository while index is not loaded.
+   *
+   * @param tagIds list of tag id's
+   * @return list of {@link TagSuggestionQueryResult}
+   */
+  @Override
+  public List<TagSuggestionQueryResult> getCompatibleTags(final List<Integer> tagIds) {
+    final CompatibilityIndex current = index.get();
+    if (current == null) {
+      return compatibilityRepository.getCompatibleTags(tagIds, MAX_COMPATIBLE_TAGS);
+    }
+    return current.compatibleTags(tagIds, MAX_COMPATIBLE_TAGS);
+  }
+
+  /**
+   * Get tags with max compatibility of every source tag from in-memory index,
+   * or from repository while index is not loaded.
+   *
+   * @param tagIds list of source tag id's
+   * @param limit max number of results per source tag
+   * @return list of {@link SourceTagSuggestionQueryResult}
+   */
+  @Override
+  public List<SourceTagSuggestionQueryResult> getCompatibleTagsOfSources(final List<Integer> tagIds, final int limit) {
+    final CompatibilityIndex current = index.get();
+    if (current == null) {
+      return compatibilityRepository.getCompatibleTagsOfSources(tagIds, limit);
+    }
+    return current.compatibleTagsOfSources(tagIds, limit);
+  }
+}
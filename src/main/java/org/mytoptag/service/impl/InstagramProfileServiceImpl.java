@@ -28,12 +28,14 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.extern.slf4j.Slf4j;
 import org.jsoup.Jsoup;
 import org.jsoup.nodes.Document;
+import org.mytoptag.http.InstagramHttpClient;
 import org.mytoptag.model.InstagramPost;
 import org.mytoptag.model.InstagramProfile;
 import org.mytoptag.model.InstagramTag;
 import org.mytoptag.repository.InstagramPostRepository;
 import org.mytoptag.service.InstagramProfileService;
 import org.mytoptag.service.InstagramTagService;
+import org.mytoptag.service.SuggestionService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
@@ -57,6 +59,8 @@ public class InstagramProfileServiceImpl implements InstagramProfileService {
 
   private static final String INSTAGRAM_URL = "https://www.instagram.com/";
 
+  private static final String INSTAGRAM_PROFILE_URL = INSTAGRAM_URL + "{username}";
+
   private static final String JSON_KEY = "window._sharedData = ";
 
   private static final String HASH_SIGN = "#";
@@ -65,18 +69,33 @@ public class InstagramProfileServiceImpl implements InstagramProfileService {
 
   private InstagramPostRepository postRepository;
 
+  private SuggestionService suggestionService;
+
+  private InstagramHttpClient httpClient;
+
+  private ObjectMapper objectMapper;
+
   /**
    * Ctor.
    *
    * @param instagramTagService {@link InstagramTagService}
    * @param postRepository {@link InstagramPostRepository}
+   * @param suggestionService {@link SuggestionService}
+   * @param httpClient {@link InstagramHttpClient}
+   * @param objectMapper {@link ObjectMapper}
    */
   @Autowired
   public InstagramProfileServiceImpl(
       final InstagramTagService instagramTagService,
-      final InstagramPostRepository postRepository) {
+      final InstagramPostRepository postRepository,
+      final SuggestionService suggestionService,
+      final InstagramHttpClient httpClient,
+      final ObjectMapper objectMapper) {
     this.tagService = instagramTagService;
     this.postRepository = postRepository;
+    this.suggestionService = suggestionService;
+    this.httpClient = httpClient;
+    this.objectMapper = objectMapper;
   }
 
   /**
@@ -100,6 +119,12 @@ public class InstagramProfileServiceImpl implements InstagramProfileService {
     final List<InstagramPost> result = posts.stream()
         .filter(p -> !existingCodes.contains(p.getShortCode()))
         .map(this::savePost).collect(Collectors.toList());
+    // savePost returns already stored post instead of the new one if it was imported before
+    suggestionService.addToCompatibilityMatrix(
+        result.stream()
+            .filter(saved -> posts.stream().anyMatch(post -> post == saved))
+            .collect(Collectors.toList())
+    );
     log.info("import for account {} is complete! {} new posts have been added",
         username, result.size());
     return result;
@@ -141,14 +166,14 @@ public class InstagramProfileServiceImpl implements InstagramProfileService {
   }
 
   private InstagramProfile retrieveInstagramProfile(final String username) throws IOException {
-    final Document document = Jsoup.connect(INSTAGRAM_URL + username).get();
+    final Document document = Jsoup.parse(httpClient.get(INSTAGRAM_PROFILE_URL, username), INSTAGRAM_URL);
     final String jsonData = document.body()
         .getElementsByTag("script")
         .first()
         .childNode(0)
         .toString();
     final String jsonString = jsonData.substring(JSON_KEY.length(), jsonData.length() - 1);
-    return new ObjectMapper().readValue(jsonString, InstagramProfile.class);
+    return objectMapper.readValue(jsonString, InstagramProfile.class);
   }
 
   private Set<String> tagsFromText(final String text) {
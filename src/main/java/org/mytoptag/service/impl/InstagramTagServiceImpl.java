@@ -24,26 +24,45 @@
 
 package org.mytoptag.service.impl;
 
+import com.fasterxml.jackson.core.JsonParser;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.extern.slf4j.Slf4j;
 import org.mytoptag.exception.ObjectNotFoundException;
+import org.mytoptag.http.InstagramHttpClient;
 import org.mytoptag.model.InstagramTag;
 import org.mytoptag.model.InstagramTagCount;
-import org.mytoptag.model.dto.InstagramSearch;
+import org.mytoptag.model.deserializer.InstagramSearchParser;
+import org.mytoptag.model.dto.InstagramTagSearchResult;
 import org.mytoptag.repository.InstagramTagCountRepository;
 import org.mytoptag.repository.InstagramTagRepository;
 import org.mytoptag.service.InstagramTagService;
+import org.mytoptag.service.TagPrefixIndexService;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.core.task.TaskRejectedException;
 import org.springframework.scheduling.annotation.Async;
 import org.springframework.stereotype.Service;
-import org.springframework.web.client.RestTemplate;
+import org.springframework.web.client.ResourceAccessException;
 
-import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Calendar;
+import java.util.Collections;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.stream.Collectors;
 import javax.transaction.Transactional;
 
@@ -61,24 +80,47 @@ public class InstagramTagServiceImpl implements InstagramTagService {
 
   private static final String LOG_MSG_RETRIEVE_ABSENT_FROM_WEB = "tag #{} is absent in repo, retrieving from web";
 
-  private static final String LOG_MSG_SAVING_TO_REPO = "saving new tag #{} to repo";
-
   private InstagramTagRepository instagramTagRepository;
 
   private InstagramTagCountRepository instagramTagCountRepository;
 
+  private TagPrefixIndexService tagPrefixIndexService;
+
+  private InstagramHttpClient httpClient;
+
+  private ObjectMapper objectMapper;
+
+  private TaskExecutor instagramExecutor;
+
+  private final Map<String, CompletableFuture<Boolean>> webFetches = new ConcurrentHashMap<>();
+
+  @Value("${tag.fetch.timeout.ms:5000}")
+  private Long fetchTimeout;
+
   /**
    * Ctor.
    *
    * @param instagramTagRepository {@link InstagramTagRepository}
    * @param instagramTagCountRepository {@link InstagramTagCountRepository}
+   * @param tagPrefixIndexService {@link TagPrefixIndexService}
+   * @param httpClient {@link InstagramHttpClient}
+   * @param objectMapper {@link ObjectMapper}
+   * @param instagramExecutor executor of Instagram fetches
    */
   @Autowired
   public InstagramTagServiceImpl(
       final InstagramTagRepository instagramTagRepository,
-      final InstagramTagCountRepository instagramTagCountRepository) {
+      final InstagramTagCountRepository instagramTagCountRepository,
+      final TagPrefixIndexService tagPrefixIndexService,
+      final InstagramHttpClient httpClient,
+      final ObjectMapper objectMapper,
+      @Qualifier("instagramExecutor") final TaskExecutor instagramExecutor) {
     this.instagramTagRepository = instagramTagRepository;
     this.instagramTagCountRepository = instagramTagCountRepository;
+    this.tagPrefixIndexService = tagPrefixIndexService;
+    this.httpClient = httpClient;
+    this.objectMapper = objectMapper;
+    this.instagramExecutor = instagramExecutor;
   }
 
   /**
@@ -90,20 +132,23 @@ public class InstagramTagServiceImpl implements InstagramTagService {
    */
   public InstagramTag getTag(final String name) throws ObjectNotFoundException {
     log.info(LOG_MSG_RETRIEVE_FROM_REPO, name);
-    InstagramTag tag = instagramTagRepository.findByTitle(name);
+    final InstagramTag tag = instagramTagRepository.findByTitle(name);
     if (tag != null) {
       return tag;
+    }
+    log.info(LOG_MSG_RETRIEVE_ABSENT_FROM_WEB, name);
+    final TagFetch fetch = fetchTag(name, Runnable::run);
+    final InstagramTag saved;
+    if (fetch.web != null) {
+      saved = await(fetch.web) == null ? null : saveTags(Collections.singletonList(fetch)).get(name);
     } else {
-      log.info(LOG_MSG_RETRIEVE_ABSENT_FROM_WEB, name);
-      tag = getTagFromWeb(name);
-      if (tag == null) {
-        log.error("failed to retrieve tag #{} from instagram", name);
-        throw new ObjectNotFoundException();
-      } else {
-        log.error(LOG_MSG_SAVING_TO_REPO, name);
-        return instagramTagRepository.save(tag);
-      }
+      saved = await(fetch.saved) ? instagramTagRepository.findByTitle(name) : null;
     }
+    if (saved == null) {
+      log.error("failed to retrieve tag #{} from instagram", name);
+      throw new ObjectNotFoundException();
+    }
+    return saved;
   }
 
   /**
@@ -114,49 +159,212 @@ public class InstagramTagServiceImpl implements InstagramTagService {
    * @throws ObjectNotFoundException If tag does not exist in repository or on Instagram
    */
   public List<InstagramTag> getTags(final Set<String> names) throws ObjectNotFoundException {
-    return names.stream().map(this::getExistingTag).collect(Collectors.toList());
+    log.info("retrieving {} tags from repository", names.size());
+    final Map<String, InstagramTag> existingTags = findExistingTags(names);
+    final List<InstagramTag> result = new ArrayList<>();
+    for (final String name : names) {
+      final InstagramTag tag = existingTags.get(name);
+      if (tag == null) {
+        log.error("failed to retrieve tag #{} from repo", name);
+        throw new ObjectNotFoundException();
+      }
+      result.add(tag);
+    }
+    return result;
   }
 
   /**
-   * Gets existing tag from repository.
+   * Saves list of tags to repository. Known tags are resolved with one query,
+   * only absent tags are retrieved from Instagram and they are inserted in one batch.
+   * Absent tags are retrieved concurrently, the call waits until all of them are retrieved.
    *
-   * @param name Tag
-   * @return InstagramTag entry
-   * @throws ObjectNotFoundException If tag does not exist in repository
+   * @param tags List of tag names
+   * @return List of InstagramTag entries
    */
-  private InstagramTag getExistingTag(final String name) throws ObjectNotFoundException {
-    log.info(LOG_MSG_RETRIEVE_FROM_REPO, name);
-    final InstagramTag tag = instagramTagRepository.findByTitle(name);
-    if (tag == null) {
-      log.error("failed to retrieve tag #{} from repo", name);
-      throw new ObjectNotFoundException();
-    }
-    return tag;
+  public List<InstagramTag> addTag(final Set<String> tags) {
+    return addTag(tags, false);
   }
 
   /**
-   * Saves list of tags to repository.
+   * Saves list of tags to repository like {@link #addTag(Set)}, but tags retrieved
+   * after the fetch timeout are not returned and are saved in background.
    *
    * @param tags List of tag names
-   * @return List of InstagramTag entries
+   * @return List of InstagramTag entries retrieved in time
    */
-  public List<InstagramTag> addTag(final Set<String> tags) {
-    final List<InstagramTag> newTags = new ArrayList<>();
-    for (String tag : tags) {
-      log.info(LOG_MSG_RETRIEVE_FROM_REPO, tag);
-      final InstagramTag existingTag = instagramTagRepository.findByTitle(tag);
-      if (existingTag != null) {
-        newTags.add(existingTag);
-      } else {
-        log.info(LOG_MSG_RETRIEVE_ABSENT_FROM_WEB, tag);
-        final InstagramTag newTag = getTagFromWeb(tag);
-        if (newTag != null) {
-          log.info(LOG_MSG_SAVING_TO_REPO, newTag.getTitle());
-          newTags.add(instagramTagRepository.save(newTag));
+  public List<InstagramTag> addTagWithinTimeout(final Set<String> tags) {
+    return addTag(tags, true);
+  }
+
+  private List<InstagramTag> addTag(final Set<String> tags, final boolean withinTimeout) {
+    log.info("retrieving {} tags from repository", tags.size());
+    final Map<String, InstagramTag> existingTags = findExistingTags(tags);
+    existingTags.putAll(getTagsFromWeb(
+        tags.stream().filter(t -> !existingTags.containsKey(t)).collect(Collectors.toList()),
+        withinTimeout
+    ));
+    return tags.stream()
+        .map(existingTags::get)
+        .filter(Objects::nonNull)
+        .collect(Collectors.toList());
+  }
+
+  /**
+   * Retrieve tags from Instagram concurrently and save them, until fetch timeout if it is applied.
+   * Tags retrieved by this call are inserted in one batch, tags retrieved by other calls are re-read
+   * once those calls have saved them.
+   *
+   * @param titles titles of absent tags
+   * @param withinTimeout true to stop waiting at fetch timeout and save later tags in background
+   * @return saved tags by title
+   */
+  private Map<String, InstagramTag> getTagsFromWeb(final List<String> titles, final boolean withinTimeout) {
+    final long deadline = System.currentTimeMillis() + fetchTimeout;
+    final List<TagFetch> fetches = new ArrayList<>();
+    for (final String title : titles) {
+      log.info(LOG_MSG_RETRIEVE_ABSENT_FROM_WEB, title);
+      try {
+        fetches.add(fetchTag(title, instagramExecutor));
+      } catch (final TaskRejectedException exception) {
+        log.error("retrieving tag #{} is rejected, too many tags are being retrieved", title);
+      }
+    }
+    final List<TagFetch> fetched = new ArrayList<>();
+    final Set<String> joined = new HashSet<>();
+    for (final TagFetch fetch : fetches) {
+      try {
+        if (fetch.web != null) {
+          if (waitFor(fetch.web, withinTimeout, deadline) != null) {
+            fetched.add(fetch);
+          }
+        } else if (waitFor(fetch.saved, withinTimeout, deadline)) {
+          joined.add(fetch.title);
         }
+      } catch (final TimeoutException exception) {
+        log.info("tag #{} is not retrieved in {} ms, it will be saved in background", fetch.title, fetchTimeout);
+        saveLateTag(fetch);
+      } catch (final InterruptedException exception) {
+        Thread.currentThread().interrupt();
+        saveLateTag(fetch);
+      } catch (final ExecutionException exception) {
+        log.error("failed to retrieve tag #{}", fetch.title, exception.getCause());
       }
     }
-    return newTags;
+    final Map<String, InstagramTag> result = saveTags(fetched);
+    result.putAll(findExistingTags(joined));
+    return result;
+  }
+
+  /**
+   * Retrieve tag from Instagram, or join retrieval of the same tag which is already in flight.
+   * The call that starts the retrieval owns it and has to save the retrieved tag,
+   * the retrieval stays in flight until the tag is saved.
+   *
+   * @param title tag title
+   * @param executor executor of a new retrieval
+   * @return {@link TagFetch}, with the retrieved tag future for the owner only
+   * @throws TaskRejectedException if executor rejects a new retrieval
+   */
+  private TagFetch fetchTag(final String title, final Executor executor) throws TaskRejectedException {
+    final CompletableFuture<Boolean> saved = new CompletableFuture<>();
+    final CompletableFuture<Boolean> inFlight = webFetches.putIfAbsent(title, saved);
+    if (inFlight != null) {
+      log.info("tag #{} is already being retrieved from web", title);
+      return new TagFetch(title, null, inFlight);
+    }
+    saved.whenComplete((result, exception) -> webFetches.remove(title, saved));
+    final CompletableFuture<InstagramTag> web = new CompletableFuture<>();
+    try {
+      executor.execute(() -> {
+        try {
+          final InstagramTag tag = getTagFromWeb(title);
+          web.complete(tag);
+          if (tag == null) {
+            saved.complete(false);
+          }
+        } catch (final RuntimeException exception) {
+          web.completeExceptionally(exception);
+          saved.completeExceptionally(exception);
+        }
+      });
+    } catch (final TaskRejectedException exception) {
+      saved.completeExceptionally(exception);
+      throw exception;
+    }
+    return new TagFetch(title, web, saved);
+  }
+
+  private static <T> T await(final CompletableFuture<T> future) {
+    try {
+      return future.join();
+    } catch (final CompletionException exception) {
+      if (exception.getCause() instanceof RuntimeException) {
+        throw (RuntimeException) exception.getCause();
+      }
+      throw exception;
+    }
+  }
+
+  private static <T> T waitFor(final CompletableFuture<T> future, final boolean withinTimeout, final long deadline)
+      throws InterruptedException, ExecutionException, TimeoutException {
+    return withinTimeout
+        ? future.get(Math.max(0, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS)
+        : future.get();
+  }
+
+  /**
+   * Insert tags retrieved by owned fetches in one batch and index them, then let joined calls re-read them.
+   *
+   * @param fetches owned fetches with retrieved tags
+   * @return saved tags by title
+   */
+  private Map<String, InstagramTag> saveTags(final List<TagFetch> fetches) {
+    if (fetches.isEmpty()) {
+      return new HashMap<>();
+    }
+    final List<InstagramTag> tags = fetches.stream().map(f -> f.web.join()).collect(Collectors.toList());
+    final Map<String, InstagramTag> saved;
+    try {
+      log.info("saving {} new tags to repo", tags.size());
+      instagramTagRepository.insertTags(tags);
+      saved = findExistingTags(tags.stream().map(InstagramTag::getTitle).collect(Collectors.toSet()));
+      indexTags(new ArrayList<>(saved.values()));
+    } catch (final RuntimeException exception) {
+      log.error("failed to save {} new tags", tags.size(), exception);
+      fetches.forEach(f -> f.saved.completeExceptionally(exception));
+      throw exception;
+    }
+    fetches.forEach(f -> f.saved.complete(saved.containsKey(f.title)));
+    return saved;
+  }
+
+  /**
+   * Save tag retrieved after fetch timeout by its owner, a joined call leaves it to the owner.
+   *
+   * @param fetch fetch which was not awaited
+   */
+  private void saveLateTag(final TagFetch fetch) {
+    if (fetch.web != null) {
+      fetch.web.thenAccept(tag -> {
+        if (tag != null) {
+          saveTags(Collections.singletonList(fetch));
+        }
+      });
+    }
+  }
+
+  /**
+   * Find existing tags with one query.
+   *
+   * @param titles tag titles
+   * @return tags by title
+   */
+  private Map<String, InstagramTag> findExistingTags(final Set<String> titles) {
+    final Map<String, InstagramTag> result = new HashMap<>();
+    if (!titles.isEmpty()) {
+      instagramTagRepository.findByTitleIn(titles).forEach(tag -> result.putIfAbsent(tag.getTitle(), tag));
+    }
+    return result;
   }
 
   /**
@@ -166,7 +374,7 @@ public class InstagramTagServiceImpl implements InstagramTagService {
   @Transactional
   public void updateAllTagHistory() {
     log.info("updating all tags info in repo");
-    instagramTagRepository.findAll().forEach(this::updateTagHistory);
+    updateTagHistory(instagramTagRepository.findAll());
     log.info("tags update complete!");
   }
 
@@ -177,7 +385,11 @@ public class InstagramTagServiceImpl implements InstagramTagService {
    * @return list of {@link InstagramTagCount}
    */
   public List<InstagramTagCount> updateTagHistory(final List<InstagramTag> tags) {
-    return tags.stream().map(this::updateTagHistory).collect(Collectors.toList());
+    final List<InstagramTagCount> counts = tags.stream().map(this::updateTagHistory).collect(Collectors.toList());
+    final Map<String, Long> latest = new HashMap<>();
+    counts.stream().filter(Objects::nonNull).forEach(c -> latest.put(c.getTag().getTitle(), c.getCount()));
+    tagPrefixIndexService.putTags(latest);
+    return counts;
   }
 
   /**
@@ -192,25 +404,17 @@ public class InstagramTagServiceImpl implements InstagramTagService {
         log.info("tag #{} already has count for today", tag.getTitle());
         return tag.getLastCount();
       }
-      final String responseJson = new RestTemplate().getForObject(
-          INSTAGRAM_SEARCH_URL,
-          String.class,
-          tag.getTitle()
-      );
-      final InstagramSearch search = new ObjectMapper().readValue(responseJson, InstagramSearch.class);
-      InstagramTagCount count = search.getHashtags()
-          .stream()
-          .filter(t -> t.getTitle().equals(tag.getTitle()))
-          .findFirst()
-          .map(s -> new InstagramTagCount(tag, s.getCount()))
-          .orElse(null);
-      if (count == null || search.getHashtags().isEmpty()) {
+      final InstagramTagSearchResult result = searchTag(tag.getTitle());
+      final InstagramTagCount count;
+      if (result == null) {
         log.error("there are no tags in #{} search", tag.getTitle());
         count = new InstagramTagCount(tag, 0L);
+      } else {
+        count = new InstagramTagCount(tag, result.getCount());
       }
       log.info("new #{} count is {}", tag.getTitle(), count.getCount());
       return instagramTagCountRepository.save(count);
-    } catch (final IOException exception) {
+    } catch (final ResourceAccessException exception) {
       log.error("Search failed for tag #{}", tag);
       return null;
     }
@@ -234,21 +438,30 @@ public class InstagramTagServiceImpl implements InstagramTagService {
   private InstagramTag getTagFromWeb(final String title) {
     try {
       log.info("retrieving tag #{} from web", title);
-      final RestTemplate restTemplate = new RestTemplate();
-      final String responseJson = restTemplate.getForObject(INSTAGRAM_SEARCH_URL, String.class, title);
-      final InstagramSearch search = new ObjectMapper().readValue(responseJson, InstagramSearch.class);
-      return search.getHashtags()
-          .stream()
-          .filter(t -> t.getTitle().equals(title))
-          .findFirst()
-          .map(s -> new InstagramTag(s.getTitle(), s.getIgId()))
-          .orElse(null);
-    } catch (final IOException exception) {
+      final InstagramTagSearchResult result = searchTag(title);
+      return result == null ? null : new InstagramTag(result.getTitle(), result.getIgId());
+    } catch (final ResourceAccessException exception) {
       log.error("Search failed for tag #{}", title);
       return null;
     }
   }
 
+  /**
+   * Search tag on instagram website. The response is parsed while it is read
+   * and the rest of it is skipped once the tag is found.
+   *
+   * @param title Tag name
+   * @return {@link InstagramTagSearchResult}, null if search has no such tag
+   * @throws ResourceAccessException if response can not be read
+   */
+  private InstagramTagSearchResult searchTag(final String title) throws ResourceAccessException {
+    return httpClient.get(INSTAGRAM_SEARCH_URL, body -> {
+      try (JsonParser parser = objectMapper.getFactory().createParser(body)) {
+        return InstagramSearchParser.findHashtag(parser, title);
+      }
+    }, title);
+  }
+
   /**
    * Delete tag from repo.
    *
@@ -261,5 +474,44 @@ public class InstagramTagServiceImpl implements InstagramTagService {
           log.info("tag #{} is deleted");
         }
     );
+    tagPrefixIndexService.removeTags(titles);
+  }
+
+  /**
+   * Add saved tags to prefix index.
+   *
+   * @param tags saved tags
+   */
+  private void indexTags(final List<InstagramTag> tags) {
+    final Map<String, Long> counts = new HashMap<>();
+    tags.forEach(t -> counts.put(t.getTitle(), t.getLastCount() == null ? null : t.getLastCount().getCount()));
+    tagPrefixIndexService.putTags(counts);
+  }
+
+  /**
+   * Tag retrieval joined by a call.
+   */
+  private static final class TagFetch {
+
+    private final String title;
+
+    private final CompletableFuture<InstagramTag> web;
+
+    private final CompletableFuture<Boolean> saved;
+
+    /**
+     * Ctor.
+     *
+     * @param title tag title
+     * @param web retrieved tag, null if tag is absent on Instagram, null for a joined retrieval
+     * @param saved true once the tag is saved, false if tag is absent on Instagram
+     */
+    private TagFetch(final String title,
+                     final CompletableFuture<InstagramTag> web,
+                     final CompletableFuture<Boolean> saved) {
+      this.title = title;
+      this.web = web;
+      this.saved = saved;
+    }
   }
 }
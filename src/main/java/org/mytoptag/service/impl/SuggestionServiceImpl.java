@@ -25,23 +25,47 @@
 package org.mytoptag.service.impl;
 
 import lombok.extern.slf4j.Slf4j;
-import org.mytoptag.model.Compatibility;
+import org.mytoptag.cache.LruCache;
+import org.mytoptag.category.CategorySnapshot;
+import org.mytoptag.category.CategorySnapshotEvent;
+import org.mytoptag.compatibility.CheckpointingRowWriter;
+import org.mytoptag.compatibility.CompatibilityCalculator;
+import org.mytoptag.compatibility.CompatibilityWriter;
+import org.mytoptag.compatibility.CompatibilityWriterFactory;
+import org.mytoptag.compatibility.CompatibleTagRanking;
+import org.mytoptag.compatibility.MatrixBuildMode;
+import org.mytoptag.compatibility.MatrixBuildProgress;
+import org.mytoptag.compatibility.MatrixBuildStatistics;
+import org.mytoptag.compatibility.MinHashCompatibilityCalculator;
+import org.mytoptag.compatibility.ParallelCompatibilityBuilder;
+import org.mytoptag.compatibility.PostingLists;
+import org.mytoptag.compatibility.TagRange;
 import org.mytoptag.model.CompatibilityKey;
-import org.mytoptag.model.PostsOfTag;
+import org.mytoptag.model.InstagramPost;
+import org.mytoptag.model.InstagramTag;
+import org.mytoptag.model.dto.CompatibleTagSuggestion;
 import org.mytoptag.model.dto.TagSuggestion;
+import org.mytoptag.model.dto.query.SourceTagSuggestionQueryResult;
 import org.mytoptag.model.dto.query.TagCategorySuggestionQueryResult;
+import org.mytoptag.model.dto.query.TermTagCategorySuggestionQueryResult;
+import org.mytoptag.model.dto.response.CacheStatisticsResponse;
+import org.mytoptag.model.dto.response.CompatibilityProgressResponse;
 import org.mytoptag.repository.CategoryRepository;
 import org.mytoptag.repository.CompatibilityRepository;
+import org.mytoptag.repository.InstagramTagRepository;
 import org.mytoptag.repository.PostsOfTagRepository;
+import org.mytoptag.service.CategorySnapshotService;
+import org.mytoptag.service.CompatibilityIndexService;
 import org.mytoptag.service.SuggestionService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
 import org.springframework.scheduling.annotation.Async;
 import org.springframework.stereotype.Service;
 
-import java.math.BigDecimal;
-import java.util.ArrayList;
-import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
 import java.util.LinkedHashMap;
@@ -49,7 +73,10 @@ import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.stream.Collectors;
+import javax.transaction.Transactional;
 
 
 /**
@@ -59,22 +86,67 @@ import java.util.stream.Collectors;
 @Slf4j
 public class SuggestionServiceImpl implements SuggestionService {
 
-  private static final Integer SCALE = 5;
-
   private static final Integer MAX_CATEGORIES = 10;
 
   private static final Integer MAX_CATEGORIES_FROM_INPUT = 5;
 
   private static final Integer MAX_TAGS_IN_POST = 30;
 
+  private static final Integer MAX_COMPATIBLE_PARTNERS = 100;
+
+  private static final String COMPATIBILITY_STAGING_TABLE = "compatibility_staging";
+
+  private static final String SQL_ENGINE = "sql";
+
   private PostsOfTagRepository postsOfTagRepository;
 
   private CompatibilityRepository compatibilityRepository;
 
   private CategoryRepository categoryRepository;
 
-  @Value("${spring.jpa.properties.hibernate.jdbc.batch_size}")
-  private Integer maxBatchSize;
+  private CompatibilityWriterFactory compatibilityWriterFactory;
+
+  private CompatibilityIndexService compatibilityIndexService;
+
+  private CategorySnapshotService categorySnapshotService;
+
+  private InstagramTagRepository instagramTagRepository;
+
+  @Value("${compatibility.parallelism:#{T(java.lang.Runtime).getRuntime().availableProcessors()}}")
+  private Integer parallelism;
+
+  @Value("${compatibility.queue.capacity:64}")
+  private Integer queueCapacity;
+
+  @Value("${compatibility.top.k:0}")
+  private Integer topK;
+
+  @Value("${compatibility.engine:exact}")
+  private String engine;
+
+  @Value("${compatibility.minhash.bands:128}")
+  private Integer minHashBands;
+
+  @Value("${compatibility.minhash.rows:1}")
+  private Integer minHashRows;
+
+  @Value("${suggestion.popularity.weight:0.3}")
+  private Double popularityWeight;
+
+  @Value("${compatibility.checkpoint.rows:10000}")
+  private Integer checkpointRows;
+
+  @Value("${compatibility.sql.min.support:1}")
+  private Integer sqlMinSupport;
+
+  @Value("${compatibility.sql.range.postings:100000}")
+  private Long sqlRangePostings;
+
+  private final MatrixBuildProgress progress = new MatrixBuildProgress();
+
+  private final AtomicBoolean building = new AtomicBoolean();
+
+  private final LruCache<List<String>, List<TagSuggestion>> recommendationCache;
 
   /**
    * Ctor.
@@ -82,69 +154,199 @@ public class SuggestionServiceImpl implements SuggestionService {
    * @param compatibilityRepository {@link CompatibilityRepository}
    * @param postsOfTagRepository    {@link PostsOfTagRepository}
    * @param categoryRepository      {@link CategoryRepository}
+   * @param compatibilityWriterFactory {@link CompatibilityWriterFactory}
+   * @param compatibilityIndexService {@link CompatibilityIndexService}
+   * @param categorySnapshotService {@link CategorySnapshotService}
+   * @param instagramTagRepository {@link InstagramTagRepository}
+   * @param recommendationCacheSize max number of cached recommendations
    */
   @Autowired
   public SuggestionServiceImpl(
       final CompatibilityRepository compatibilityRepository,
       final PostsOfTagRepository postsOfTagRepository,
-      final CategoryRepository categoryRepository) {
+      final CategoryRepository categoryRepository,
+      final CompatibilityWriterFactory compatibilityWriterFactory,
+      final CompatibilityIndexService compatibilityIndexService,
+      final CategorySnapshotService categorySnapshotService,
+      final InstagramTagRepository instagramTagRepository,
+      @Value("${suggestion.cache.size:1000}") final Integer recommendationCacheSize) {
     this.compatibilityRepository = compatibilityRepository;
     this.postsOfTagRepository = postsOfTagRepository;
     this.categoryRepository = categoryRepository;
+    this.compatibilityWriterFactory = compatibilityWriterFactory;
+    this.compatibilityIndexService = compatibilityIndexService;
+    this.categorySnapshotService = categorySnapshotService;
+    this.instagramTagRepository = instagramTagRepository;
+    this.recommendationCache = new LruCache<>(recommendationCacheSize);
   }
 
   /**
-   * Update tag compatibility matrix.
+   * Update tag compatibility matrix, resuming interrupted update if any.
    */
   @Async("processExecutor")
   public void updateCompatibilityMatrix() {
-    compatibilityRepository.clearCompatibilityMatrix();
-    final Map<Integer, List<Integer>> tagsMap = postsOfTagRepository.findAll()
-        .stream()
-        .collect(Collectors.toMap(PostsOfTag::getTag, v -> Arrays.asList(v.getPosts())));
-    final Integer[] tags = tagsMap.keySet().toArray(new Integer[0]);
-    final int matrixSize = tags.length;
-    for (int i = 0; i < matrixSize; i++) {
-      log.info("Calculating compatibility for tag {}", tags[i]);
-      final Integer allPostsOccurrence = tagsMap.get(tags[i]).size();
-      final List<Compatibility> compatibilities = new ArrayList<>();
-      for (int j = matrixSize - 1; j > i; j--) {
-        final long compatiblePosts = tagsMap.get(tags[i])
-            .stream()
-            .filter(tagsMap.get(tags[j])::contains)
-            .count();
-        if (compatiblePosts > 0) {
-          final BigDecimal compatibilityValue = new BigDecimal(compatiblePosts).divide(
-              BigDecimal.valueOf(allPostsOccurrence),
-              SCALE,
-              BigDecimal.ROUND_HALF_UP
-          );
-          compatibilities.add(
-              new Compatibility(
-                  new CompatibilityKey(tags[i], tags[j]),
-                  compatibilityValue.doubleValue()
-              )
-          );
-        }
-      }
-      log.info("Saving {} compatibility entries for tag {}", compatibilities.size(), tags[i]);
-      saveInBatches(compatibilities);
+    build(false);
+  }
+
+  /**
+   * Resume compatibility matrix update interrupted by a restart.
+   */
+  @Async("processExecutor")
+  @EventListener(ApplicationReadyEvent.class)
+  public void resumeCompatibilityMatrix() {
+    build(true);
+  }
+
+  /**
+   * Get progress of current or last compatibility matrix update.
+   *
+   * @return {@link CompatibilityProgressResponse}
+   */
+  public CompatibilityProgressResponse getCompatibilityMatrixProgress() {
+    return progress.snapshot();
+  }
+
+  private void build(final boolean resumeOnly) {
+    if (!building.compareAndSet(false, true)) {
+      log.warn("compatibility matrix update is already running");
+      return;
+    }
+    try {
+      buildMatrix(resumeOnly);
+    } finally {
+      progress.finish();
+      building.set(false);
     }
+  }
+
+  private void buildMatrix(final boolean resumeOnly) {
+    final long start = System.currentTimeMillis();
+    final List<Integer> checkpoint = compatibilityRepository.resumeStagingTable(COMPATIBILITY_STAGING_TABLE);
+    if (!checkpoint.isEmpty()) {
+      log.info("resuming compatibility matrix update, {} rows have already been written", checkpoint.size());
+    } else if (resumeOnly) {
+      return;
+    } else {
+      compatibilityRepository.createStagingTable(COMPATIBILITY_STAGING_TABLE);
+    }
+    final MatrixBuildStatistics statistics = SQL_ENGINE.equals(engine)
+        ? buildInDatabase(checkpoint.size())
+        : buildInMemory(checkpoint);
+    if (statistics == null) {
+      return;
+    }
+    final long indexStart = System.currentTimeMillis();
+    compatibilityRepository.indexStagingTable(COMPATIBILITY_STAGING_TABLE);
+    final long indexMillis = System.currentTimeMillis() - indexStart;
+    compatibilityRepository.replaceWithStagingTable(
+        COMPATIBILITY_STAGING_TABLE,
+        new MatrixBuildMode(engine, topK, SQL_ENGINE.equals(engine) ? sqlMinSupport : 1)
+    );
+    compatibilityIndexService.reload();
     log.info("compatibility matrix has been updated successfully, new entries amount: {}",
-        compatibilityRepository.count());
+        statistics.getPairs());
+    log.info("compatibility matrix phases: compute {} ms, write {} ms, index {} ms, total {} ms",
+        statistics.getComputeMillis(), statistics.getWriteMillis(), indexMillis,
+        System.currentTimeMillis() - start);
   }
 
-  private void saveInBatches(final List<Compatibility> compatibilities) {
-    final List<Compatibility> batch = new ArrayList<>();
-    for (int i = 0; i < compatibilities.size(); i++) {
-      batch.add(compatibilities.get(i));
-      if (batch.size() == maxBatchSize || i == compatibilities.size() - 1) {
-        compatibilityRepository.saveAll(batch);
-        batch.clear();
+  private MatrixBuildStatistics buildInMemory(final List<Integer> checkpoint) {
+    final long start = System.currentTimeMillis();
+    final PostingLists postingLists = postsOfTagRepository.loadPostingLists();
+    final BitSet completed = new BitSet(postingLists.size());
+    checkpoint.forEach(tag -> {
+      final int row = postingLists.row(tag);
+      if (row >= 0) {
+        completed.set(row);
       }
+    });
+    progress.start(postingLists.size(), completed.cardinality());
+    log.info("{} posting lists have been loaded in {} ms", postingLists.size(), System.currentTimeMillis() - start);
+    try (CompatibilityWriter writer = compatibilityWriterFactory.create(COMPATIBILITY_STAGING_TABLE)) {
+      return new ParallelCompatibilityBuilder(parallelism, queueCapacity).build(
+          postingLists,
+          calculator(postingLists),
+          completed,
+          new CheckpointingRowWriter(
+              writer,
+              postingLists,
+              compatibilityRepository::addCheckpoint,
+              progress,
+              checkpointRows
+          )
+      );
+    } catch (final InterruptedException ex) {
+      log.error("compatibility matrix update is interrupted", ex);
+      Thread.currentThread().interrupt();
+      return null;
     }
   }
 
+  private MatrixBuildStatistics buildInDatabase(final int checkpointedTags) {
+    log.info("using SQL compatibility engine with min support {}", sqlMinSupport);
+    final List<TagRange> ranges = compatibilityRepository.splitUncheckpointedTags(sqlRangePostings);
+    progress.start(ranges.stream().mapToInt(TagRange::getTags).sum() + checkpointedTags, checkpointedTags);
+    int rows = 0;
+    long pairs = 0;
+    long computeMillis = 0;
+    for (final TagRange range : ranges) {
+      final MatrixBuildStatistics rangeStatistics = compatibilityRepository.insertCompatibilityRange(
+          COMPATIBILITY_STAGING_TABLE,
+          range,
+          sqlMinSupport,
+          topK
+      );
+      progress.rowsDone(rangeStatistics.getRows(), rangeStatistics.getPairs());
+      rows += rangeStatistics.getRows();
+      pairs += rangeStatistics.getPairs();
+      computeMillis += rangeStatistics.getComputeMillis();
+    }
+    return new MatrixBuildStatistics(rows, pairs, computeMillis, 0);
+  }
+
+  private CompatibilityCalculator calculator(final PostingLists postingLists) {
+    if (MatrixBuildMode.MINHASH_ENGINE.equals(engine)) {
+      log.info("using MinHash compatibility engine with {} bands of {} rows", minHashBands, minHashRows);
+      return new MinHashCompatibilityCalculator(postingLists, topK, minHashBands, minHashRows);
+    }
+    return new CompatibilityCalculator(postingLists, topK);
+  }
+
+  /**
+   * Add occurrences of tags and tag pairs of new posts to compatibility matrix.
+   *
+   * @param posts list of saved {@link InstagramPost}
+   */
+  @Transactional
+  public void addToCompatibilityMatrix(final List<InstagramPost> posts) {
+    final Map<Integer, Integer> tagOccurrences = new HashMap<>();
+    final Map<CompatibilityKey, Integer> pairOccurrences = new HashMap<>();
+    posts.forEach(post -> {
+      final int[] tags = post.getTags().stream()
+          .mapToInt(InstagramTag::getId)
+          .sorted()
+          .distinct()
+          .toArray();
+      for (int i = 0; i < tags.length; i++) {
+        tagOccurrences.merge(tags[i], 1, Integer::sum);
+        for (int j = i + 1; j < tags.length; j++) {
+          pairOccurrences.merge(new CompatibilityKey(tags[i], tags[j]), 1, Integer::sum);
+        }
+      }
+    });
+    if (tagOccurrences.isEmpty()) {
+      return;
+    }
+    final MatrixBuildMode mode = compatibilityRepository.getBuildMode();
+    if (!mode.isComplete()) {
+      log.info("compatibility matrix has been built by {} engine with top K {} and min support {}, "
+          + "only existing tag pairs are updated", mode.getEngine(), mode.getTopK(), mode.getMinSupport());
+    }
+    compatibilityRepository.addOccurrences(tagOccurrences, pairOccurrences, mode.isComplete());
+    log.info("{} posts have been added to compatibility matrix, {} tags and {} tag pairs updated",
+        posts.size(), tagOccurrences.size(), pairOccurrences.size());
+  }
+
   /**
    * Retrieves most relevant tags according to tag category relations.
    *
@@ -152,12 +354,85 @@ public class SuggestionServiceImpl implements SuggestionService {
    * @return List of {@link TagSuggestion}
    */
   public List<TagSuggestion> getRecommendations(final Set<String> input) {
+    final List<String> terms = input.stream()
+        .limit(MAX_CATEGORIES)
+        .sorted()
+        .collect(Collectors.toList());
+    return recommendationCache.get(terms, this::findRecommendations);
+  }
+
+  /**
+   * Retrieves most relevant tags on suggestion executor, so request threads are not blocked.
+   *
+   * @param input set of users tags
+   * @return future of {@link TagSuggestion} list
+   */
+  @Async("suggestionExecutor")
+  public CompletableFuture<List<TagSuggestion>> getRecommendationsAsync(final Set<String> input) {
+    return CompletableFuture.completedFuture(getRecommendations(input));
+  }
+
+  /**
+   * Retrieves tags most compatible with users tags, blended with their popularity.
+   *
+   * @param input set of users tags
+   * @return List of {@link CompatibleTagSuggestion}
+   */
+  public List<CompatibleTagSuggestion> getCompatibleRecommendations(final Set<String> input) {
+    final List<InstagramTag> tags = instagramTagRepository.findByTitleIn(
+        input.stream().limit(MAX_CATEGORIES).collect(Collectors.toSet())
+    );
+    if (tags.isEmpty()) {
+      return new LinkedList<>();
+    }
+    final List<SourceTagSuggestionQueryResult> candidates = compatibilityIndexService.getCompatibleTagsOfSources(
+        tags.stream().map(InstagramTag::getId).collect(Collectors.toList()),
+        MAX_COMPATIBLE_PARTNERS
+    );
+    return CompatibleTagRanking.rank(
+        candidates,
+        tags.stream().collect(Collectors.toMap(InstagramTag::getId, InstagramTag::getTitle)),
+        popularityWeight,
+        MAX_TAGS_IN_POST
+    );
+  }
+
+  /**
+   * Drop cached recommendations after category snapshot is replaced.
+   */
+  @EventListener(CategorySnapshotEvent.class)
+  public void invalidateRecommendations() {
+    recommendationCache.invalidateAll();
+  }
+
+  /**
+   * Get recommendation cache statistics.
+   *
+   * @return {@link CacheStatisticsResponse}
+   */
+  public CacheStatisticsResponse getRecommendationCacheStatistics() {
+    return recommendationCache.statistics();
+  }
+
+  private List<TagSuggestion> findRecommendations(final List<String> terms) {
+    if (terms.isEmpty()) {
+      return new LinkedList<>();
+    }
+    final Map<String, List<TagCategorySuggestionQueryResult>> termResults = categorySnapshotService
+        .getSnapshot()
+        .map(snapshot -> findTagsInSnapshot(snapshot, terms))
+        .orElseGet(() -> findTagsOfTerms(terms));
     final Map<String, Map<String, List<TagSuggestion>>> inputResult = new HashMap<>();
-    input.stream().limit(MAX_CATEGORIES).forEach(i -> {
-      final List<TagCategorySuggestionQueryResult> queryResults = categoryRepository.findRelevantTags(i);
+    terms.forEach(i -> {
+      final List<TagCategorySuggestionQueryResult> queryResults =
+          termResults.getOrDefault(i, new LinkedList<>());
       final Map<String, List<TagSuggestion>> inputSearchResult =
           queryResults.stream()
-              .collect(Collectors.groupingBy(TagCategorySuggestionQueryResult::getCategory))
+              .collect(Collectors.groupingBy(
+                  TagCategorySuggestionQueryResult::getCategory,
+                  LinkedHashMap::new,
+                  Collectors.toList()
+              ))
               .entrySet().stream()
               .collect(
                   Collectors.toMap(
@@ -183,7 +458,27 @@ public class SuggestionServiceImpl implements SuggestionService {
         .sorted(Comparator.comparing(TagSuggestion::getSortOrder))
         .limit(MAX_TAGS_IN_POST)
         .sorted(Comparator.comparing(TagSuggestion::getCategory))
-        .collect(Collectors.toList());
+        .collect(Collectors.collectingAndThen(Collectors.toList(), Collections::unmodifiableList));
+  }
+
+  private Map<String, List<TagCategorySuggestionQueryResult>> findTagsInSnapshot(final CategorySnapshot snapshot,
+                                                                               final List<String> terms) {
+    final Map<String, List<TagCategorySuggestionQueryResult>> result = new HashMap<>();
+    terms.forEach(term -> result.put(
+        term,
+        snapshot.find(term, MAX_CATEGORIES_FROM_INPUT).stream()
+            .<TagCategorySuggestionQueryResult>flatMap(title -> snapshot.tags(title).stream())
+            .collect(Collectors.toList())
+    ));
+    return result;
+  }
+
+  private Map<String, List<TagCategorySuggestionQueryResult>> findTagsOfTerms(final List<String> terms) {
+    return categoryRepository.findRelevantTagsOfTerms(terms, MAX_CATEGORIES_FROM_INPUT).stream()
+        .collect(Collectors.groupingBy(
+            TermTagCategorySuggestionQueryResult::getTerm,
+            Collectors.mapping(result -> (TagCategorySuggestionQueryResult) result, Collectors.toList())
+        ));
   }
 
 }
@@ -0,0 +1,131 @@
+/*
+ * Copyright (c) 2018 Stanislav Myachenkov
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+
+
+package org.mytoptag.service.impl;
+
+import lombok.extern.slf4j.Slf4j;
+import org.mytoptag.model.dto.TagCompletion;
+import org.mytoptag.repository.InstagramTagRepository;
+import org.mytoptag.service.TagPrefixIndexService;
+import org.mytoptag.tag.TagPrefixIndex;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Async;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.UnaryOperator;
+
+
+/**
+ * {@link TagPrefixIndexService} implementation.
+ * Updates made while the index is loading are replayed over the loaded index.
+ */
+@Service
+@Slf4j
+public class TagPrefixIndexServiceImpl implements TagPrefixIndexService {
+
+  private static final String HASH = "#";
+
+  private final List<UnaryOperator<TagPrefixIndex>> pending = new ArrayList<>();
+
+  private volatile TagPrefixIndex index;
+
+  private InstagramTagRepository instagramTagRepository;
+
+  @Value("${tag.completion.limit:10}")
+  private Integer limit;
+
+  /**
+   * Ctor.
+   *
+   * @param instagramTagRepository {@link InstagramTagRepository}
+   */
+  @Autowired
+  public TagPrefixIndexServiceImpl(final InstagramTagRepository instagramTagRepository) {
+    this.instagramTagRepository = instagramTagRepository;
+  }
+
+  @Override
+  @Async("processExecutor")
+  @EventListener(ApplicationReadyEvent.class)
+  public void load() {
+    final long start = System.currentTimeMillis();
+    final TagPrefixIndex loaded = instagramTagRepository.loadPrefixIndex();
+    final int replayed;
+    synchronized (this) {
+      TagPrefixIndex current = loaded;
+      for (final UnaryOperator<TagPrefixIndex> update : pending) {
+        current = update.apply(current);
+      }
+      replayed = pending.size();
+      pending.clear();
+      index = current;
+    }
+    log.info("tag prefix index with {} titles has been loaded in {} ms, {} updates replayed",
+        loaded.size(), System.currentTimeMillis() - start, replayed);
+  }
+
+  @Override
+  public List<TagCompletion> complete(final String prefix) {
+    final TagPrefixIndex current = index;
+    if (current == null) {
+      log.info("tag prefix index is not loaded yet");
+      return new ArrayList<>();
+    }
+    final String title = prefix.trim();
+    return current.find(title.startsWith(HASH) ? title.substring(HASH.length()) : title, limit);
+  }
+
+  @Override
+  public void putTags(final Map<String, Long> counts) {
+    if (!counts.isEmpty()) {
+      final Map<String, Long> copy = new HashMap<>(counts);
+      update(current -> current.withTags(copy));
+    }
+  }
+
+  @Override
+  public void removeTags(final Collection<String> titles) {
+    if (!titles.isEmpty()) {
+      final List<String> copy = new ArrayList<>(titles);
+      update(current -> current.withoutTags(copy));
+    }
+  }
+
+  private synchronized void update(final UnaryOperator<TagPrefixIndex> update) {
+    if (index == null) {
+      pending.add(update);
+    } else {
+      index = update.apply(index);
+    }
+  }
+}
@@ -0,0 +1,401 @@
+/*
+ * Copyright (c) 2018 Stanislav Myachenkov
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+
+
+package org.mytoptag.tag;
+
+import org.mytoptag.util.BoundedMinHeap;
+import org.mytoptag.model.dto.TagCompletion;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+
+/**
+ * Read-only prefix index of tag titles ranked by latest count.
+ * Titles are sorted and packed into a single char array, so titles with a common prefix
+ * form a contiguous range found by binary search, blocks of the range whose max count cannot
+ * make it into the result are skipped. Added and updated titles go to a small
+ * sorted delta over the packed base and hide their base rows, the delta is merged into
+ * the base once it outgrows a fraction of the index.
+ */
+public final class TagPrefixIndex {
+
+  private static final int MIN_DELTA = 1024;
+
+  private static final int DELTA_FRACTION = 64;
+
+  private static final int BLOCK = 64;
+
+  private static final TagPrefixIndex EMPTY = new TagPrefixIndex(
+      new char[0], new int[1], new long[0], new long[0], new BitSet(), new String[0], new long[0]
+  );
+
+  private final char[] chars;
+
+  private final int[] offsets;
+
+  private final long[] counts;
+
+  private final long[] blockMax;
+
+  private final BitSet hidden;
+
+  private final String[] deltaTitles;
+
+  private final long[] deltaCounts;
+
+  private TagPrefixIndex(final char[] chars,
+                         final int[] offsets,
+                         final long[] counts,
+                         final long[] blockMax,
+                         final BitSet hidden,
+                         final String[] deltaTitles,
+                         final long[] deltaCounts) {
+    this.chars = chars;
+    this.offsets = offsets;
+    this.counts = counts;
+    this.blockMax = blockMax;
+    this.hidden = hidden;
+    this.deltaTitles = deltaTitles;
+    this.deltaCounts = deltaCounts;
+  }
+
+  /**
+   * Empty index.
+   *
+   * @return TagPrefixIndex without titles
+   */
+  public static TagPrefixIndex empty() {
+    return EMPTY;
+  }
+
+  /**
+   * Number of titles.
+   *
+   * @return number of indexed titles
+   */
+  public int size() {
+    return counts.length - hidden.cardinality() + deltaTitles.length;
+  }
+
+  /**
+   * Find titles starting with a prefix.
+   *
+   * @param prefix title prefix
+   * @param limit max number of titles
+   * @return list of {@link TagCompletion} by descending count, then by title
+   */
+  public List<TagCompletion> find(final String prefix, final int limit) {
+    if (prefix.isEmpty() || limit <= 0) {
+      return new ArrayList<>();
+    }
+    final BoundedMinHeap heap = new BoundedMinHeap(Math.min(limit, counts.length + deltaTitles.length));
+    final int first = lowerBound(prefix);
+    final int last = prefixEnd(prefix, first);
+    final int from = deltaLowerBound(prefix);
+    final int[] deltaRanks = deltaRanks(prefix, from);
+    int deltasBefore = 0;
+    int row = first;
+    while (row < last) {
+      final int block = row / BLOCK;
+      final int blockEnd = Math.min(last, (block + 1) * BLOCK);
+      if (heap.isFull() && blockMax[block] <= heap.minKey()) {
+        row = blockEnd;
+        continue;
+      }
+      for (; row < blockEnd; row++) {
+        while (deltasBefore < deltaRanks.length && deltaRanks[deltasBefore] - from - deltasBefore <= row) {
+          deltasBefore++;
+        }
+        if (!hidden.get(row)) {
+          heap.offer(counts[row], row + from + deltasBefore);
+        }
+      }
+    }
+    for (int i = 0; i < deltaRanks.length; i++) {
+      heap.offer(deltaCounts[from + i], deltaRanks[i]);
+    }
+    final List<TagCompletion> result = new ArrayList<>(heap.size());
+    for (int i = 0; i < heap.size(); i++) {
+      final int rank = heap.value(i);
+      final int delta = Arrays.binarySearch(deltaRanks, rank);
+      if (delta >= 0) {
+        result.add(new TagCompletion(deltaTitles[from + delta], deltaCounts[from + delta]));
+      } else {
+        final int entry = rank - from + delta + 1;
+        result.add(new TagCompletion(title(entry), counts[entry]));
+      }
+    }
+    result.sort(Comparator.comparing(TagCompletion::getCount).reversed().thenComparing(TagCompletion::getTitle));
+    return result;
+  }
+
+  /**
+   * Index with added or updated titles.
+   *
+   * @param titles counts by title
+   * @return new TagPrefixIndex, this index is not modified
+   */
+  public TagPrefixIndex withTags(final Map<String, Long> titles) {
+    final BitSet newHidden = (BitSet) hidden.clone();
+    final TreeMap<String, Long> added = new TreeMap<>();
+    titles.forEach((title, count) -> {
+      final int row = row(title);
+      if (row >= 0) {
+        newHidden.set(row);
+      }
+      added.put(title, count == null ? 0L : count);
+    });
+    final String[] titlesOut = new String[deltaTitles.length + added.size()];
+    final long[] countsOut = new long[titlesOut.length];
+    int size = 0;
+    int index = 0;
+    for (final Map.Entry<String, Long> entry : added.entrySet()) {
+      while (index < deltaTitles.length && deltaTitles[index].compareTo(entry.getKey()) < 0) {
+        titlesOut[size] = deltaTitles[index];
+        countsOut[size++] = deltaCounts[index++];
+      }
+      if (index < deltaTitles.length && deltaTitles[index].equals(entry.getKey())) {
+        index++;
+      }
+      titlesOut[size] = entry.getKey();
+      countsOut[size++] = entry.getValue();
+    }
+    for (; index < deltaTitles.length; index++) {
+      titlesOut[size] = deltaTitles[index];
+      countsOut[size++] = deltaCounts[index];
+    }
+    return of(newHidden, Arrays.copyOf(titlesOut, size), Arrays.copyOf(countsOut, size));
+  }
+
+  /**
+   * Index without titles.
+   *
+   * @param titles removed titles
+   * @return new TagPrefixIndex, this index is not modified
+   */
+  public TagPrefixIndex withoutTags(final Collection<String> titles) {
+    final BitSet newHidden = (BitSet) hidden.clone();
+    final Set<String> removed = new HashSet<>(titles);
+    for (final String title : removed) {
+      final int row = row(title);
+      if (row >= 0) {
+        newHidden.set(row);
+      }
+    }
+    final String[] titlesOut = new String[deltaTitles.length];
+    final long[] countsOut = new long[deltaTitles.length];
+    int size = 0;
+    for (int i = 0; i < deltaTitles.length; i++) {
+      if (!removed.contains(deltaTitles[i])) {
+        titlesOut[size] = deltaTitles[i];
+        countsOut[size++] = deltaCounts[i];
+      }
+    }
+    return of(newHidden, Arrays.copyOf(titlesOut, size), Arrays.copyOf(countsOut, size));
+  }
+
+  private TagPrefixIndex of(final BitSet newHidden, final String[] titles, final long[] values) {
+    final int hiddenRows = newHidden.cardinality();
+    if (titles.length + hiddenRows <= Math.max(MIN_DELTA, counts.length / DELTA_FRACTION)) {
+      return new TagPrefixIndex(chars, offsets, counts, blockMax, newHidden, titles, values);
+    }
+    final Builder builder = new Builder(counts.length - hiddenRows + titles.length);
+    for (int row = newHidden.nextClearBit(0); row < counts.length; row = newHidden.nextClearBit(row + 1)) {
+      builder.add(title(row), counts[row]);
+    }
+    for (int i = 0; i < titles.length; i++) {
+      builder.add(titles[i], values[i]);
+    }
+    return builder.build();
+  }
+
+  private String title(final int row) {
+    return new String(chars, offsets[row], offsets[row + 1] - offsets[row]);
+  }
+
+  private int row(final String title) {
+    final int row = lowerBound(title);
+    return row < counts.length && compare(row, title) == 0 && !hidden.get(row) ? row : -1;
+  }
+
+  private int lowerBound(final String key) {
+    int low = 0;
+    int high = counts.length;
+    while (low < high) {
+      final int middle = (low + high) >>> 1;
+      if (compare(middle, key) < 0) {
+        low = middle + 1;
+      } else {
+        high = middle;
+      }
+    }
+    return low;
+  }
+
+  private int prefixEnd(final String prefix, final int from) {
+    int low = from;
+    int high = counts.length;
+    while (low < high) {
+      final int middle = (low + high) >>> 1;
+      if (startsWith(middle, prefix)) {
+        low = middle + 1;
+      } else {
+        high = middle;
+      }
+    }
+    return low;
+  }
+
+  /**
+   * Ranks of delta titles starting with a prefix among base and delta titles in title order,
+   * so ties of counts in the heap are broken by title. Base row r ranks r plus number of delta titles before it.
+   */
+  private int[] deltaRanks(final String prefix, final int from) {
+    int to = from;
+    while (to < deltaTitles.length && deltaTitles[to].startsWith(prefix)) {
+      to++;
+    }
+    final int[] ranks = new int[to - from];
+    for (int i = from; i < to; i++) {
+      ranks[i - from] = lowerBound(deltaTitles[i]) + i;
+    }
+    return ranks;
+  }
+
+  private int deltaLowerBound(final String key) {
+    final int index = Arrays.binarySearch(deltaTitles, key);
+    return index >= 0 ? index : -index - 1;
+  }
+
+  private int compare(final int row, final String key) {
+    final int from = offsets[row];
+    final int length = offsets[row + 1] - from;
+    final int common = Math.min(length, key.length());
+    for (int i = 0; i < common; i++) {
+      final int difference = chars[from + i] - key.charAt(i);
+      if (difference != 0) {
+        return difference;
+      }
+    }
+    return length - key.length();
+  }
+
+  private boolean startsWith(final int row, final String prefix) {
+    final int from = offsets[row];
+    if (offsets[row + 1] - from < prefix.length()) {
+      return false;
+    }
+    for (int i = 0; i < prefix.length(); i++) {
+      if (chars[from + i] != prefix.charAt(i)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * {@link TagPrefixIndex} builder.
+   */
+  public static final class Builder {
+
+    private String[] titles;
+
+    private long[] counts;
+
+    private int size;
+
+    /**
+     * Ctor.
+     *
+     * @param capacity expected number of titles
+     */
+    public Builder(final int capacity) {
+      this.titles = new String[Math.max(capacity, 1)];
+      this.counts = new long[Math.max(capacity, 1)];
+    }
+
+    /**
+     * Add title.
+     *
+     * @param title tag title
+     * @param count latest tag count, null if tag has no count yet
+     * @return this builder
+     */
+    public Builder add(final String title, final Long count) {
+      if (size == titles.length) {
+        titles = Arrays.copyOf(titles, size * 2);
+        counts = Arrays.copyOf(counts, size * 2);
+      }
+      titles[size] = title;
+      counts[size] = count == null ? 0L : count;
+      size++;
+      return this;
+    }
+
+    /**
+     * Build index. Of duplicate titles the one with the largest count is kept.
+     *
+     * @return TagPrefixIndex
+     */
+    public TagPrefixIndex build() {
+      final Integer[] order = new Integer[size];
+      for (int i = 0; i < size; i++) {
+        order[i] = i;
+      }
+      Arrays.sort(order, (a, b) -> titles[a].compareTo(titles[b]));
+      int distinct = 0;
+      int length = 0;
+      for (int i = 0; i < size; i++) {
+        if (i == 0 || !titles[order[i]].equals(titles[order[distinct - 1]])) {
+          order[distinct++] = order[i];
+          length += titles[order[i]].length();
+        } else if (counts[order[i]] > counts[order[distinct - 1]]) {
+          order[distinct - 1] = order[i];
+        }
+      }
+      final char[] chars = new char[length];
+      final int[] offsets = new int[distinct + 1];
+      final long[] sortedCounts = new long[distinct];
+      final long[] blockMax = new long[(distinct + BLOCK - 1) / BLOCK];
+      for (int i = 0; i < distinct; i++) {
+        final String title = titles[order[i]];
+        title.getChars(0, title.length(), chars, offsets[i]);
+        offsets[i + 1] = offsets[i] + title.length();
+        sortedCounts[i] = counts[order[i]];
+        blockMax[i / BLOCK] = Math.max(blockMax[i / BLOCK], sortedCounts[i]);
+      }
+      return new TagPrefixIndex(chars, offsets, sortedCounts, blockMax, new BitSet(), new String[0], new long[0]);
+    }
+  }
+}
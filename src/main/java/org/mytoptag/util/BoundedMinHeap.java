@@ -0,0 +1,157 @@
+/*
+ * Copyright (c) 2018 Stanislav Myachenkov
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+
+
+package org.mytoptag.util;
+
+
+/**
+ * Min-heap of long keys with int values keeping only entries with the largest keys.
+ * On equal keys entries with lower values are kept.
+ */
+public final class BoundedMinHeap {
+
+  private final long[] keys;
+
+  private final int[] values;
+
+  private int size;
+
+  /**
+   * Ctor.
+   *
+   * @param capacity max number of entries
+   */
+  public BoundedMinHeap(final int capacity) {
+    this.keys = new long[capacity];
+    this.values = new int[capacity];
+  }
+
+  /**
+   * Offer an entry, it replaces the entry with the smallest key if heap is full.
+   *
+   * @param key entry key
+   * @param value entry value
+   */
+  public void offer(final long key, final int value) {
+    if (size < keys.length) {
+      keys[size] = key;
+      values[size] = value;
+      siftUp(size++);
+    } else if (keys.length > 0 && (key > keys[0] || key == keys[0] && value < values[0])) {
+      keys[0] = key;
+      values[0] = value;
+      siftDown(0);
+    }
+  }
+
+  /**
+   * Number of entries.
+   *
+   * @return number of entries, at most capacity
+   */
+  public int size() {
+    return size;
+  }
+
+  /**
+   * Whether heap holds capacity entries, so an entry with a key below {@link #minKey()} is not kept.
+   *
+   * @return true if heap is full
+   */
+  public boolean isFull() {
+    return size == keys.length;
+  }
+
+  /**
+   * Smallest key of heap entries.
+   *
+   * @return smallest key, heap must not be empty
+   */
+  public long minKey() {
+    return keys[0];
+  }
+
+  /**
+   * Key of an entry in heap order.
+   *
+   * @param index entry index, less than {@link #size()}
+   * @return entry key
+   */
+  public long key(final int index) {
+    return keys[index];
+  }
+
+  /**
+   * Value of an entry in heap order.
+   *
+   * @param index entry index, less than {@link #size()}
+   * @return entry value
+   */
+  public int value(final int index) {
+    return values[index];
+  }
+
+  private void siftUp(final int index) {
+    int child = index;
+    while (child > 0) {
+      final int parent = (child - 1) >>> 1;
+      if (!less(child, parent)) {
+        return;
+      }
+      swap(parent, child);
+      child = parent;
+    }
+  }
+
+  private void siftDown(final int index) {
+    int parent = index;
+    while (true) {
+      final int left = 2 * parent + 1;
+      if (left >= size) {
+        return;
+      }
+      final int right = left + 1;
+      final int child = right < size && less(right, left) ? right : left;
+      if (!less(child, parent)) {
+        return;
+      }
+      swap(parent, child);
+      parent = child;
+    }
+  }
+
+  private boolean less(final int first, final int second) {
+    return keys[first] < keys[second] || keys[first] == keys[second] && values[first] > values[second];
+  }
+
+  private void swap(final int first, final int second) {
+    final long key = keys[first];
+    final int value = values[first];
+    keys[first] = keys[second];
+    values[first] = values[second];
+    keys[second] = key;
+    values[second] = value;
+  }
+}
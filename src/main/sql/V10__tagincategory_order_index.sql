@@ -0,0 +1 @@
+create index itagincategory_category_order on TAGINCATEGORY(CATEGORY_ID, SORT_ORDER, TAG_ID);
@@ -0,0 +1,35 @@
+create temporary table TAGDUPLICATE as
+select t.ID, kept.ID KEPT_ID
+from TAG t
+join (
+  select TITLE, min(ID) ID
+  from TAG
+  group by TITLE
+  having count(*) > 1) kept
+  on kept.TITLE = t.TITLE and kept.ID <> t.ID;
+
+update TAGINPOST tp set TAG_ID = d.KEPT_ID from TAGDUPLICATE d where tp.TAG_ID = d.ID;
+
+delete from TAGINPOST a using TAGINPOST b
+where a.ctid < b.ctid and a.TAG_ID = b.TAG_ID and a.POST_ID = b.POST_ID
+  and a.TAG_ID in (select KEPT_ID from TAGDUPLICATE);
+
+update TAGINCATEGORY tic set TAG_ID = d.KEPT_ID from TAGDUPLICATE d where tic.TAG_ID = d.ID;
+
+delete from TAGINCATEGORY a using TAGINCATEGORY b
+where a.ctid < b.ctid and a.TAG_ID = b.TAG_ID and a.CATEGORY_ID = b.CATEGORY_ID
+  and a.TAG_ID in (select KEPT_ID from TAGDUPLICATE);
+
+update TAGCOUNT tc set TAG_ID = d.KEPT_ID from TAGDUPLICATE d where tc.TAG_ID = d.ID;
+
+delete from COMPATIBILITY c using TAGDUPLICATE d where c.TAG_A = d.ID or c.TAG_B = d.ID;
+
+delete from TAGOCCURRENCE o using TAGDUPLICATE d where o.TAG_ID = d.ID;
+
+delete from COMPATIBILITYCHECKPOINT cc using TAGDUPLICATE d where cc.TAG_ID = d.ID;
+
+delete from TAG t using TAGDUPLICATE d where t.ID = d.ID;
+
+drop table TAGDUPLICATE;
+
+alter table TAG add constraint UTAG_TITLE unique (TITLE);
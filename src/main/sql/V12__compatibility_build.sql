@@ -0,0 +1,10 @@
+create table COMPATIBILITYBUILD (
+  ID int primary key check (ID = 1),
+  ENGINE varchar(32) not null,
+  TOP_K int not null,
+  MIN_SUPPORT int not null,
+  BUILD_DATE timestamp not null default NOW()
+);
+
+insert into COMPATIBILITYBUILD (ID, ENGINE, TOP_K, MIN_SUPPORT)
+values (1, 'exact', 0, 1);
@@ -0,0 +1,36 @@
+alter table COMPATIBILITY
+add column OCCURRENCE int not null default 0;
+
+create table TAGOCCURRENCE (
+  TAG_ID int primary key references TAG(ID),
+  OCCURRENCE int not null
+);
+
+insert into TAGOCCURRENCE (TAG_ID, OCCURRENCE)
+select TAG_ID, count(distinct POST_ID)
+from TAGINPOST
+group by TAG_ID;
+
+update COMPATIBILITY
+set TAG_A = TAG_B, TAG_B = TAG_A
+where TAG_A > TAG_B;
+
+update COMPATIBILITY c
+set OCCURRENCE = p.OCCURRENCE
+from (
+  select x.TAG_A, x.TAG_B, count(distinct a.POST_ID) OCCURRENCE
+  from COMPATIBILITY x
+  join TAGINPOST a
+    on a.TAG_ID = x.TAG_A
+  join TAGINPOST b
+    on b.POST_ID = a.POST_ID
+   and b.TAG_ID = x.TAG_B
+  group by x.TAG_A, x.TAG_B
+) p
+where p.TAG_A = c.TAG_A
+  and p.TAG_B = c.TAG_B;
+
+update COMPATIBILITY c
+set COMPATIBILITY = round(c.OCCURRENCE::numeric / o.OCCURRENCE, 5)
+from TAGOCCURRENCE o
+where o.TAG_ID = c.TAG_A;
@@ -0,0 +1,3 @@
+create table COMPATIBILITYCHECKPOINT (
+  TAG_ID int primary key references TAG(ID)
+);
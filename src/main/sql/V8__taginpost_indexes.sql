@@ -0,0 +1,3 @@
+create index itaginpost_tag on TAGINPOST(TAG_ID, POST_ID);
+
+create index itaginpost_post on TAGINPOST(POST_ID, TAG_ID);
@@ -0,0 +1,5 @@
+create extension if not exists pg_trgm;
+
+create index icategory_title_trgm on CATEGORY using gin (TITLE gin_trgm_ops);
+
+create index icategory_title on CATEGORY(TITLE);
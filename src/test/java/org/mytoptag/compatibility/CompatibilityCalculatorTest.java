@@ -0,0 +1,179 @@
+/*
+ * Copyright (c) 2018 Stanislav Myachenkov
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+
+package org.mytoptag.compatibility;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+import org.mytoptag.model.Compatibility;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+
+/**
+ * Checks {@link CompatibilityCalculator} and {@link Intersections} against straightforward implementations.
+ */
+public class CompatibilityCalculatorTest {
+
+  private static final int SCALE = 5;
+
+  private final Random random = new Random(42);
+
+  @Test
+  public void rowsMatchBoxedListImplementation() {
+    for (int round = 0; round < 20; round++) {
+      final Map<Integer, List<Integer>> tagsMap = randomTags(50 + random.nextInt(100), 2000);
+      final PostingLists postingLists = postingLists(tagsMap);
+      final CompatibilityCalculator calculator = new CompatibilityCalculator(postingLists);
+      final Integer[] tags = tagsMap.keySet().stream().sorted().toArray(Integer[]::new);
+      for (int i = 0; i < tags.length; i++) {
+        assertEquals("tag " + tags[i], boxedRow(tagsMap, tags, i), entries(calculator.row(i)));
+      }
+    }
+  }
+
+  @Test
+  public void topKRowsKeepMostCompatibleTags() {
+    final int topK = 5;
+    final Map<Integer, List<Integer>> tagsMap = randomTags(100, 500);
+    final CompatibilityCalculator calculator = new CompatibilityCalculator(postingLists(tagsMap), topK);
+    final Integer[] tags = tagsMap.keySet().stream().sorted().toArray(Integer[]::new);
+    for (int i = 0; i < tags.length; i++) {
+      final Map<Integer, String> expected = boxedRow(tagsMap, tags, i).entrySet()
+          .stream()
+          .sorted(Comparator.<Map.Entry<Integer, String>, Integer>comparing(e -> occurrence(e.getValue()))
+              .reversed()
+              .thenComparing(Map.Entry::getKey))
+          .limit(topK)
+          .collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue));
+      assertEquals("tag " + tags[i], expected, entries(calculator.row(i)));
+    }
+  }
+
+  @Test
+  public void mergeIntersectionMatchesNaiveCount() {
+    for (int round = 0; round < 1000; round++) {
+      final int[] first = randomPosts(random.nextInt(200), 1000);
+      final int[] second = randomPosts(random.nextInt(200), 1000);
+      assertEquals(naiveSize(first, second), Intersections.size(first, second));
+    }
+  }
+
+  @Test
+  public void gallopIntersectionMatchesNaiveCount() {
+    for (int round = 0; round < 1000; round++) {
+      final int[] small = randomPosts(1 + random.nextInt(8), 100_000);
+      final int[] large = randomPosts(small.length * 33 + random.nextInt(5000), 100_000);
+      for (final int value : small) {
+        if (random.nextBoolean()) {
+          large[random.nextInt(large.length)] = value;
+        }
+      }
+      final int[] distinctLarge = Arrays.stream(large).sorted().distinct().toArray();
+      assertEquals(naiveSize(small, distinctLarge), Intersections.size(small, distinctLarge));
+      assertEquals(naiveSize(small, distinctLarge), Intersections.size(distinctLarge, small));
+    }
+  }
+
+  /**
+   * Row of the matrix as calculated before {@link CompatibilityCalculator}: boxed post lists filtered
+   * with {@link List#contains}.
+   */
+  private static Map<Integer, String> boxedRow(final Map<Integer, List<Integer>> tagsMap, final Integer[] tags,
+                                               final int i) {
+    final Map<Integer, String> result = new LinkedHashMap<>();
+    final Integer allPostsOccurrence = tagsMap.get(tags[i]).size();
+    for (int j = tags.length - 1; j > i; j--) {
+      final long compatiblePosts = tagsMap.get(tags[i])
+          .stream()
+          .filter(tagsMap.get(tags[j])::contains)
+          .count();
+      if (compatiblePosts > 0) {
+        final BigDecimal compatibilityValue = new BigDecimal(compatiblePosts).divide(
+            BigDecimal.valueOf(allPostsOccurrence),
+            SCALE,
+            BigDecimal.ROUND_HALF_UP
+        );
+        result.put(tags[j], entry(compatibilityValue.doubleValue(), compatiblePosts));
+      }
+    }
+    return result;
+  }
+
+  private static Map<Integer, String> entries(final List<Compatibility> row) {
+    final Map<Integer, String> result = new LinkedHashMap<>();
+    for (final Compatibility compatibility : row) {
+      result.put(
+          compatibility.getId().getTagB(),
+          entry(compatibility.getCompatibility(), compatibility.getOccurrence())
+      );
+    }
+    return result;
+  }
+
+  private static String entry(final double compatibility, final long occurrence) {
+    return compatibility + "/" + occurrence;
+  }
+
+  private static int occurrence(final String entry) {
+    return Integer.parseInt(entry.substring(entry.indexOf('/') + 1));
+  }
+
+  private static PostingLists postingLists(final Map<Integer, List<Integer>> tagsMap) {
+    final PostingLists.Builder builder = new PostingLists.Builder(tagsMap.size());
+    tagsMap.forEach((tag, posts) -> builder.add(tag, posts.stream().mapToInt(Integer::intValue).toArray()));
+    return builder.build();
+  }
+
+  private Map<Integer, List<Integer>> randomTags(final int size, final int posts) {
+    final Map<Integer, List<Integer>> result = new LinkedHashMap<>();
+    while (result.size() < size) {
+      final int length = random.nextInt(10) == 0 ? random.nextInt(posts / 2) : random.nextInt(30);
+      final List<Integer> tagPosts = Arrays.stream(randomPosts(length, posts)).boxed().collect(Collectors.toList());
+      Collections.shuffle(tagPosts, random);
+      result.put(random.nextInt(size * 10), tagPosts);
+    }
+    return result;
+  }
+
+  private int[] randomPosts(final int size, final int bound) {
+    return random.ints(0, bound).distinct().limit(size).sorted().toArray();
+  }
+
+  private static int naiveSize(final int[] first, final int[] second) {
+    final Set<Integer> values = Arrays.stream(second).boxed().collect(Collectors.toCollection(HashSet::new));
+    return (int) Arrays.stream(first).filter(values::contains).count();
+  }
+}
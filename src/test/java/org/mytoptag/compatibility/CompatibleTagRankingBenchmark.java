@@ -0,0 +1,251 @@
+/*
+ * Copyright (c) 2018 Stanislav Myachenkov
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+
+package org.mytoptag.compatibility;
+
+import org.mytoptag.category.CategorySnapshot;
+import org.mytoptag.model.InstagramTag;
+import org.mytoptag.model.dto.CompatibleTagSuggestion;
+import org.mytoptag.model.dto.TagSuggestion;
+import org.mytoptag.model.dto.query.SourceTagSuggestionQueryResult;
+import org.mytoptag.model.dto.query.TagSuggestionQueryResult;
+import org.mytoptag.repository.InstagramTagRepository;
+import org.mytoptag.service.CategorySnapshotService;
+import org.mytoptag.service.CompatibilityIndexService;
+import org.mytoptag.service.impl.SuggestionServiceImpl;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Random;
+import java.util.Set;
+
+
+/**
+ * Measures {@link CompatibilityIndex#compatibleTagsOfSources(java.util.Collection, int)} lookup
+ * and {@link CompatibleTagRanking} heap ranking against a full sort of the same candidates
+ * on a random index of 100k tags with 100 partners each. Then runs the compatible suggestion path
+ * and the category suggestion path of {@link SuggestionServiceImpl} on the same input tags,
+ * the category path reads an in-memory {@link CategorySnapshot} of 20k categories named after
+ * random tags with 30 tags each, its recommendation cache is disabled and its popularity weight is 0.3.
+ * Run with <code>mvn test-compile exec:java -Dexec.classpathScope=test
+ * -Dstart-class=org.mytoptag.compatibility.CompatibleTagRankingBenchmark</code>.
+ */
+public final class CompatibleTagRankingBenchmark {
+
+  private static final int TAGS = 100_000;
+
+  private static final int PARTNERS = 100;
+
+  private static final int CATEGORIES = 20_000;
+
+  private static final int TAGS_IN_CATEGORY = 30;
+
+  private static final int SOURCES = 5;
+
+  private static final int PARTNERS_PER_SOURCE = 100;
+
+  private static final int LIMIT = 30;
+
+  private static final int QUERIES = 20_000;
+
+  private static final int ROUNDS = 3;
+
+  private CompatibleTagRankingBenchmark() {
+  }
+
+  /**
+   * Run benchmark.
+   *
+   * @param args unused
+   */
+  public static void main(final String[] args) {
+    final Random random = new Random(7);
+    final CompatibilityIndex.Builder builder = new CompatibilityIndex.Builder();
+    for (int tag = 1; tag <= TAGS; tag++) {
+      builder.tag(tag, "tag" + tag, random.nextInt(5_000_000));
+    }
+    for (int tag = 1; tag <= TAGS; tag++) {
+      for (int i = 0; i < PARTNERS; i++) {
+        builder.pair(tag, 1 + random.nextInt(TAGS), random.nextInt(100_000) / 1e5);
+      }
+    }
+    final CompatibilityIndex index = builder.build();
+    for (int round = 0; round < ROUNDS; round++) {
+      long lookupNanos = 0;
+      long heapNanos = 0;
+      long sortNanos = 0;
+      boolean same = true;
+      for (int query = 0; query < QUERIES; query++) {
+        final List<Integer> ids = new ArrayList<>();
+        final Map<Integer, String> sources = new HashMap<>();
+        for (int i = 0; i < SOURCES; i++) {
+          final int id = 1 + random.nextInt(TAGS);
+          ids.add(id);
+          sources.put(id, "tag" + id);
+        }
+        final long start = System.nanoTime();
+        final List<SourceTagSuggestionQueryResult> candidates = index.compatibleTagsOfSources(ids, PARTNERS_PER_SOURCE);
+        final long lookup = System.nanoTime();
+        final List<CompatibleTagSuggestion> heap = CompatibleTagRanking.rank(candidates, sources, 0.3, LIMIT);
+        final long ranked = System.nanoTime();
+        final List<CompatibleTagSuggestion> all =
+            CompatibleTagRanking.rank(candidates, sources, 0.3, Integer.MAX_VALUE - 1);
+        final List<CompatibleTagSuggestion> sorted = all.subList(0, Math.min(LIMIT, all.size()));
+        final long end = System.nanoTime();
+        same &= heap.equals(sorted);
+        lookupNanos += lookup - start;
+        heapNanos += ranked - lookup;
+        sortNanos += end - ranked;
+      }
+      System.out.printf("lookup %.1f us, heap ranking %.1f us, full sort %.1f us, same results %s%n",
+          lookupNanos / 1e3 / QUERIES, heapNanos / 1e3 / QUERIES, sortNanos / 1e3 / QUERIES, same);
+    }
+
+    final SuggestionServiceImpl service = new SuggestionServiceImpl(
+        null,
+        null,
+        null,
+        null,
+        indexService(index),
+        snapshotService(snapshot(random)),
+        tagRepository(),
+        1
+    );
+    ReflectionTestUtils.setField(service, "popularityWeight", 0.3);
+    for (int round = 0; round < ROUNDS; round++) {
+      long compatibleNanos = 0;
+      long categoryNanos = 0;
+      long compatibleResults = 0;
+      long categoryResults = 0;
+      for (int query = 0; query < QUERIES; query++) {
+        final Set<String> input = new HashSet<>();
+        for (int i = 0; i < SOURCES; i++) {
+          input.add("tag" + (1 + random.nextInt(TAGS)));
+        }
+        final long start = System.nanoTime();
+        compatibleResults += service.getCompatibleRecommendations(input).size();
+        final long compatible = System.nanoTime();
+        categoryResults += service.getRecommendations(input).size();
+        final long end = System.nanoTime();
+        compatibleNanos += compatible - start;
+        categoryNanos += end - compatible;
+      }
+      System.out.printf("compatible path %.1f us, %.1f tags; category path %.1f us, %.1f tags%n",
+          compatibleNanos / 1e3 / QUERIES, (double) compatibleResults / QUERIES,
+          categoryNanos / 1e3 / QUERIES, (double) categoryResults / QUERIES);
+    }
+  }
+
+  private static CategorySnapshot snapshot(final Random random) {
+    final List<TagSuggestion> rows = new ArrayList<>();
+    final Set<String> categories = new HashSet<>();
+    while (categories.size() < CATEGORIES) {
+      final String category = "tag" + (1 + random.nextInt(TAGS));
+      if (categories.add(category)) {
+        for (int i = 0; i < TAGS_IN_CATEGORY; i++) {
+          rows.add(new TagSuggestion("tag" + (1 + random.nextInt(TAGS)), category, i));
+        }
+      }
+    }
+    return CategorySnapshot.of(rows);
+  }
+
+  private static CategorySnapshotService snapshotService(final CategorySnapshot snapshot) {
+    return new CategorySnapshotService() {
+
+      @Override
+      public void load() {
+      }
+
+      @Override
+      public void reload() {
+      }
+
+      @Override
+      public Optional<CategorySnapshot> getSnapshot() {
+        return Optional.of(snapshot);
+      }
+    };
+  }
+
+  private static CompatibilityIndexService indexService(final CompatibilityIndex index) {
+    return new CompatibilityIndexService() {
+
+      @Override
+      public void load() {
+      }
+
+      @Override
+      public void reload() {
+      }
+
+      @Override
+      public List<TagSuggestionQueryResult> getCompatibleTags(final List<Integer> tagIds) {
+        return index.compatibleTags(tagIds, LIMIT);
+      }
+
+      @Override
+      public List<SourceTagSuggestionQueryResult> getCompatibleTagsOfSources(final List<Integer> tagIds,
+                                                                            final int limit) {
+        return index.compatibleTagsOfSources(tagIds, limit);
+      }
+    };
+  }
+
+  /**
+   * Tag repository answering only findByTitleIn from memory.
+   */
+  @SuppressWarnings("unchecked")
+  private static InstagramTagRepository tagRepository() {
+    final Map<String, InstagramTag> tags = new HashMap<>();
+    for (int id = 1; id <= TAGS; id++) {
+      final InstagramTag tag = new InstagramTag("tag" + id, (long) id);
+      tag.setId(id);
+      tags.put(tag.getTitle(), tag);
+    }
+    return (InstagramTagRepository) Proxy.newProxyInstance(
+        InstagramTagRepository.class.getClassLoader(),
+        new Class<?>[] {InstagramTagRepository.class},
+        (proxy, method, args) -> {
+          if (!"findByTitleIn".equals(method.getName())) {
+            throw new UnsupportedOperationException(method.getName());
+          }
+          final List<InstagramTag> result = new ArrayList<>();
+          for (final String title : (Collection<String>) args[0]) {
+            if (tags.containsKey(title)) {
+              result.add(tags.get(title));
+            }
+          }
+          return result;
+        }
+    );
+  }
+}
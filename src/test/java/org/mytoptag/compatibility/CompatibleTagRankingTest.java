@@ -0,0 +1,107 @@
+/*
+ * Copyright (c) 2018 Stanislav Myachenkov
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+
+package org.mytoptag.compatibility;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+import org.mytoptag.model.dto.CompatibleTagSuggestion;
+import org.mytoptag.model.dto.query.CompatibleSourceTagResult;
+import org.mytoptag.model.dto.query.SourceTagSuggestionQueryResult;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+
+/**
+ * {@link CompatibleTagRanking} of {@link CompatibilityIndex#compatibleTagsOfSources(java.util.Collection, int)}.
+ */
+public class CompatibleTagRankingTest {
+
+  private final CompatibilityIndex index = new CompatibilityIndex.Builder()
+      .tag(1, "first", 100)
+      .tag(2, "second", 200)
+      .tag(3, "partner", 300)
+      .tag(4, "other", 400)
+      .pair(1, 2, 0.9)
+      .pair(1, 3, 0.5)
+      .pair(1, 4, 0.2)
+      .pair(2, 3, 0.5)
+      .build();
+
+  @Test
+  public void equalCompatibilityIsCountedForEverySource() {
+    final List<CompatibleTagSuggestion> result = rank(Arrays.asList(1, 2));
+    assertEquals(2, result.size());
+    assertEquals("partner", result.get(0).getTag());
+    assertEquals(new BigDecimal("0.50000"), result.get(0).getCompatibility());
+  }
+
+  @Test
+  public void compatibilityIsAveragedOverAllSources() {
+    final List<CompatibleTagSuggestion> result = rank(Arrays.asList(1, 2));
+    assertEquals("other", result.get(1).getTag());
+    assertEquals(new BigDecimal("0.10000"), result.get(1).getCompatibility());
+  }
+
+  @Test
+  public void sourcesAreExcluded() {
+    assertTrue(rank(Arrays.asList(1, 2)).stream().noneMatch(s -> "second".equals(s.getTag())));
+  }
+
+  @Test
+  public void repeatedRowsOfSourceAreCountedOnce() {
+    final SourceTagSuggestionQueryResult row = new CompatibleSourceTagResult(1, "partner", new BigDecimal("0.5"), 300);
+    final List<CompatibleTagSuggestion> result = CompatibleTagRanking.rank(
+        Arrays.asList(row, row),
+        sources(Arrays.asList(1, 2)),
+        0,
+        30
+    );
+    assertEquals(new BigDecimal("0.25000"), result.get(0).getCompatibility());
+  }
+
+  @Test
+  public void partnersOfSourceDoNotDependOnOtherSources() {
+    assertEquals(
+        index.compatibleTagsOfSources(Arrays.asList(1), 2),
+        index.compatibleTagsOfSources(Arrays.asList(2, 1), 2).subList(1, 3)
+    );
+  }
+
+  private List<CompatibleTagSuggestion> rank(final List<Integer> ids) {
+    return CompatibleTagRanking.rank(index.compatibleTagsOfSources(ids, 10), sources(ids), 0, 30);
+  }
+
+  private Map<Integer, String> sources(final List<Integer> ids) {
+    final Map<Integer, String> result = new HashMap<>();
+    ids.forEach(id -> result.put(id, id == 1 ? "first" : "second"));
+    return result;
+  }
+}
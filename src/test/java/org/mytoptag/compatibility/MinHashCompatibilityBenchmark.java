@@ -0,0 +1,160 @@
+/*
+ * Copyright (c) 2018 Stanislav Myachenkov
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+
+package org.mytoptag.compatibility;
+
+import org.mytoptag.model.Compatibility;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+
+/**
+ * Compares speed, memory and recall of {@link MinHashCompatibilityCalculator} with the exact
+ * {@link CompatibilityCalculator} on synthetic topic-clustered posts of 200k tags.
+ * Exact rows are too slow to calculate for every tag, so both calculators run on the same random sample
+ * of rows and full build time of one thread is extrapolated from it.
+ * Run with <code>MAVEN_OPTS=-Xmx3g mvn test-compile exec:java -Dexec.classpathScope=test
+ * -Dstart-class=org.mytoptag.compatibility.MinHashCompatibilityBenchmark [-Dexec.args="bands/rows ..."]</code>.
+ */
+public final class MinHashCompatibilityBenchmark {
+
+  private static final int TAGS = 200_000;
+
+  private static final int POSTS = 2_000_000;
+
+  private static final int TAGS_IN_TOPIC = 50;
+
+  private static final int SAMPLE_ROWS = 400;
+
+  private static final double STRONG_COMPATIBILITY = 0.3;
+
+  private static final String[] DEFAULT_SETTINGS = {"16/4", "32/2", "128/2", "64/1", "128/1", "256/1"};
+
+  private MinHashCompatibilityBenchmark() {
+  }
+
+  /**
+   * Run benchmark.
+   *
+   * @param args MinHash settings as bands/rows, default settings are used if empty
+   */
+  public static void main(final String[] args) {
+    final Random random = new Random(5);
+    final PostingLists postingLists = postingLists(random);
+    final int[] sample = random.ints(SAMPLE_ROWS, 0, TAGS).sorted().distinct().toArray();
+    final Map<Long, Double> exact = new HashMap<>();
+    long start = System.nanoTime();
+    final CompatibilityCalculator exactCalculator = new CompatibilityCalculator(postingLists);
+    for (final int row : sample) {
+      exactCalculator.row(row).forEach(c -> exact.put(key(c), c.getCompatibility()));
+    }
+    final double exactRowMillis = (System.nanoTime() - start) / 1e6 / sample.length;
+    final long strong = exact.values().stream().filter(v -> v >= STRONG_COMPATIBILITY).count();
+    System.out.printf("%d tags, %d postings; exact: %.0f candidates and %.2f ms per row, %.0f s per build, "
+            + "%.1f pairs per row, %.1f pairs with compatibility >= %.1f per row%n",
+        postingLists.size(), postingLists.postings(), TAGS / 2.0, exactRowMillis, exactRowMillis * TAGS / 1e3,
+        (double) exact.size() / sample.length, (double) strong / sample.length, STRONG_COMPATIBILITY);
+    for (final String setting : args.length == 0 ? DEFAULT_SETTINGS : args) {
+      final String[] bandsRows = setting.split("/");
+      final int bands = Integer.parseInt(bandsRows[0]);
+      final int rows = Integer.parseInt(bandsRows[1]);
+      final long memory = usedMemory();
+      start = System.nanoTime();
+      final MinHashCompatibilityCalculator calculator =
+          new MinHashCompatibilityCalculator(postingLists, 0, bands, rows);
+      final double indexSeconds = (System.nanoTime() - start) / 1e9;
+      final double indexMegabytes = (usedMemory() - memory) / 1048576.0;
+      long found = 0;
+      long strongFound = 0;
+      start = System.nanoTime();
+      for (final int row : sample) {
+        final List<Compatibility> compatibilities = calculator.row(row);
+        found += compatibilities.size();
+        for (final Compatibility compatibility : compatibilities) {
+          if (compatibility.getCompatibility() >= STRONG_COMPATIBILITY) {
+            strongFound++;
+          }
+        }
+      }
+      final double rowMillis = (System.nanoTime() - start) / 1e6 / sample.length;
+      final long[] candidates = new long[1];
+      for (final int row : sample) {
+        calculator.forEachCandidate(row, column -> candidates[0]++);
+      }
+      final double buildSeconds = indexSeconds + rowMillis * TAGS / 1e3;
+      System.out.printf("minhash %d/%d: index %.1f s, %.0f MB; %.0f candidates and %.3f ms per row, "
+              + "%.0f s per build, recall %.2f, recall of strong pairs %.2f, speedup %.1fx%n",
+          bands, rows, indexSeconds, indexMegabytes, (double) candidates[0] / sample.length, rowMillis, buildSeconds,
+          (double) found / exact.size(), (double) strongFound / strong,
+          exactRowMillis * TAGS / 1e3 / buildSeconds);
+    }
+  }
+
+  /**
+   * Posts of topics with a few popular tags each, a quarter of posts also has a random tag.
+   */
+  private static PostingLists postingLists(final Random random) {
+    final int[][] tagPosts = new int[TAGS][4];
+    final int[] lengths = new int[TAGS];
+    final int topics = TAGS / TAGS_IN_TOPIC;
+    for (int post = 0; post < POSTS; post++) {
+      final int topic = random.nextInt(topics);
+      final int tags = 5 + random.nextInt(10);
+      for (int i = 0; i < tags; i++) {
+        add(tagPosts, lengths, topic * TAGS_IN_TOPIC + (int) Math.abs(random.nextGaussian() * 12) % TAGS_IN_TOPIC,
+            post);
+      }
+      if (random.nextInt(4) == 0) {
+        add(tagPosts, lengths, random.nextInt(TAGS), post);
+      }
+    }
+    final PostingLists.Builder builder = new PostingLists.Builder(TAGS);
+    for (int tag = 0; tag < TAGS; tag++) {
+      builder.add(tag, Arrays.copyOf(tagPosts[tag], lengths[tag]));
+      tagPosts[tag] = null;
+    }
+    return builder.build();
+  }
+
+  private static void add(final int[][] tagPosts, final int[] lengths, final int tag, final int post) {
+    if (lengths[tag] == tagPosts[tag].length) {
+      tagPosts[tag] = Arrays.copyOf(tagPosts[tag], lengths[tag] * 2);
+    }
+    tagPosts[tag][lengths[tag]++] = post;
+  }
+
+  private static long key(final Compatibility compatibility) {
+    return (long) compatibility.getId().getTagA() << Integer.SIZE | compatibility.getId().getTagB();
+  }
+
+  private static long usedMemory() {
+    System.gc();
+    final Runtime runtime = Runtime.getRuntime();
+    return runtime.totalMemory() - runtime.freeMemory();
+  }
+}
@@ -0,0 +1,187 @@
+/*
+ * Copyright (c) 2018 Stanislav Myachenkov
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+
+package org.mytoptag.model.deserializer;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.mytoptag.model.dto.InstagramSearch;
+import org.mytoptag.model.dto.InstagramTagSearchResult;
+
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+
+/**
+ * Measures allocation and time of parsing a synthetic topsearch response of 50 users, 10 places
+ * and 30 hashtags with a {@link JsonNode} tree walk, the streaming {@link InstagramSearchDeserializer}
+ * and {@link InstagramSearchParser#findHashtag(JsonParser, String)}, and checks that the streaming
+ * results match the tree walk.
+ * Run with <code>mvn test-compile exec:java -Dexec.classpathScope=test
+ * -Dstart-class=org.mytoptag.model.deserializer.InstagramSearchParserBenchmark</code>.
+ */
+public final class InstagramSearchParserBenchmark {
+
+  private static final int USERS = 50;
+
+  private static final int PLACES = 10;
+
+  private static final int HASHTAGS = 30;
+
+  private static final int WARMUP = 20000;
+
+  private static final int ROUNDS = 20000;
+
+  private InstagramSearchParserBenchmark() {
+  }
+
+  /**
+   * Run benchmark.
+   *
+   * @param args unused
+   * @throws Exception if response can not be parsed
+   */
+  public static void main(final String[] args) throws Exception {
+    final ObjectMapper mapper = new ObjectMapper();
+    final byte[] response = response().getBytes(StandardCharsets.UTF_8);
+    System.out.printf("response %.1f KB%n", response.length / 1024.0);
+
+    final List<InstagramTagSearchResult> expected = treeWalk(mapper, response);
+    final List<InstagramTagSearchResult> actual = mapper.readValue(response, InstagramSearch.class).getHashtags();
+    int mismatches = expected.size() == actual.size() ? 0 : Math.abs(expected.size() - actual.size());
+    for (int i = 0; i < Math.min(expected.size(), actual.size()); i++) {
+      if (!expected.get(i).equals(actual.get(i))) {
+        mismatches++;
+      }
+    }
+    for (final InstagramTagSearchResult tag : expected) {
+      try (JsonParser parser = mapper.getFactory().createParser(response)) {
+        if (!tag.equals(InstagramSearchParser.findHashtag(parser, tag.getTitle()))) {
+          mismatches++;
+        }
+      }
+    }
+    System.out.printf("%d hashtags, %d mismatch tree walk%n", expected.size(), mismatches);
+
+    measure("readTree + walk", () -> treeWalk(mapper, response));
+    measure("streaming deserializer", () -> mapper.readValue(response, InstagramSearch.class));
+    measure("findHashtag, first", () -> find(mapper, response, title(0)));
+    measure("findHashtag, 15th", () -> find(mapper, response, title(HASHTAGS / 2)));
+    measure("findHashtag, absent", () -> find(mapper, response, "absent"));
+  }
+
+  private static void measure(final String name, final Operation operation) throws Exception {
+    final com.sun.management.ThreadMXBean threads =
+        (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    final long thread = Thread.currentThread().getId();
+    for (int i = 0; i < WARMUP; i++) {
+      operation.run();
+    }
+    final long allocated = threads.getThreadAllocatedBytes(thread);
+    final long start = System.nanoTime();
+    for (int i = 0; i < ROUNDS; i++) {
+      operation.run();
+    }
+    final long time = System.nanoTime() - start;
+    System.out.printf("%-24s %6.1f KB %6.1f us per response%n",
+        name, (threads.getThreadAllocatedBytes(thread) - allocated) / 1024.0 / ROUNDS, time / 1e3 / ROUNDS);
+  }
+
+  private static InstagramTagSearchResult find(final ObjectMapper mapper, final byte[] response,
+                                               final String title) throws Exception {
+    try (JsonParser parser = mapper.getFactory().createParser(response)) {
+      return InstagramSearchParser.findHashtag(parser, title);
+    }
+  }
+
+  private static List<InstagramTagSearchResult> treeWalk(final ObjectMapper mapper,
+                                                         final byte[] response) throws Exception {
+    final JsonNode node = mapper.readTree(new String(response, StandardCharsets.UTF_8));
+    final List<InstagramTagSearchResult> result = new ArrayList<>();
+    for (Iterator<JsonNode> it = node.get("hashtags").elements(); it.hasNext();) {
+      final JsonNode tag = it.next().get("hashtag");
+      result.add(new InstagramTagSearchResult(
+          tag.get("name").asText(),
+          tag.get("id").asLong(),
+          tag.get("media_count").longValue()
+      ));
+    }
+    return result;
+  }
+
+  private static String response() {
+    final StringBuilder response = new StringBuilder("{\"users\":[");
+    for (int i = 0; i < USERS; i++) {
+      response.append(i == 0 ? "" : ",")
+          .append("{\"position\":").append(i)
+          .append(",\"user\":{\"pk\":\"").append(1_000_000 + i)
+          .append("\",\"username\":\"user_").append(i)
+          .append("\",\"full_name\":\"Full Name ").append(i)
+          .append("\",\"is_private\":false")
+          .append(",\"profile_pic_url\":\"https://scontent.cdninstagram.com/vp/abcdef0123456789/")
+          .append(i).append("_n.jpg?_nc_ht=scontent\",\"profile_pic_id\":\"123456789_").append(i)
+          .append("\",\"is_verified\":false,\"has_anonymous_profile_picture\":false,\"follower_count\":")
+          .append(i * 1234).append(",\"byline\":\"").append(i)
+          .append("k followers\",\"mutual_followers_count\":0.0,\"latest_reel_media\":0}}");
+    }
+    response.append("],\"places\":[");
+    for (int i = 0; i < PLACES; i++) {
+      response.append(i == 0 ? "" : ",")
+          .append("{\"place\":{\"location\":{\"pk\":\"").append(i)
+          .append("\",\"name\":\"Place ").append(i)
+          .append("\",\"address\":\"Street ").append(i)
+          .append("\",\"city\":\"City\",\"lng\":30.1").append(i)
+          .append(",\"lat\":59.9").append(i)
+          .append("},\"title\":\"Place ").append(i)
+          .append("\",\"subtitle\":\"City\",\"media_bundles\":[],\"slug\":\"place-").append(i)
+          .append("\"},\"position\":").append(USERS + i).append('}');
+    }
+    response.append("],\"hashtags\":[");
+    for (int i = 0; i < HASHTAGS; i++) {
+      response.append(i == 0 ? "" : ",")
+          .append("{\"position\":").append(i)
+          .append(",\"hashtag\":{\"name\":\"").append(title(i))
+          .append("\",\"id\":").append(17_841_563_269_118_000L + i)
+          .append(",\"media_count\":").append(400_000_000 - i * 1000)
+          .append(",\"profile_pic_url\":\"https://scontent.cdninstagram.com/vp/hash/").append(i)
+          .append(".jpg\",\"search_result_subtitle\":\"").append(400 - i).append("m posts\"}}");
+    }
+    response.append("],\"has_more\":true,\"rank_token\":\"0.123\",\"clear_client_cache\":false,\"status\":\"ok\"}");
+    return response.toString();
+  }
+
+  private static String title(final int index) {
+    return index == 0 ? "travel" : "travel" + index;
+  }
+
+  @FunctionalInterface
+  private interface Operation {
+
+    Object run() throws Exception;
+  }
+}
@@ -0,0 +1,165 @@
+/*
+ * Copyright (c) 2018 Stanislav Myachenkov
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+
+package org.mytoptag.tag;
+
+import org.mytoptag.model.dto.TagCompletion;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+
+/**
+ * Measures memory, prefix query and update time of {@link TagPrefixIndex} on 1M random titles
+ * and checks query results against a naive scan after random adds and deletes.
+ * Run with <code>mvn test-compile exec:java -Dexec.classpathScope=test
+ * -Dstart-class=org.mytoptag.tag.TagPrefixIndexBenchmark</code>.
+ */
+public final class TagPrefixIndexBenchmark {
+
+  private static final int TAGS = 1_000_000;
+
+  private static final int UPDATES = 5000;
+
+  private static final int PREFIXES = 2000;
+
+  private static final int LIMIT = 10;
+
+  private static final int MAX_PREFIX_LENGTH = 4;
+
+  private static final int ROUNDS = 5;
+
+  private TagPrefixIndexBenchmark() {
+  }
+
+  /**
+   * Run benchmark.
+   *
+   * @param args unused
+   */
+  public static void main(final String[] args) {
+    final Random random = new Random(1);
+    final String[] titles = new String[TAGS];
+    final long[] counts = new long[TAGS];
+    for (int i = 0; i < TAGS; i++) {
+      titles[i] = randomTitle(random, 4 + random.nextInt(14));
+      counts[i] = (long) Math.exp(random.nextDouble() * 16);
+    }
+    System.gc();
+    final long before = usedMemory();
+    TagPrefixIndex.Builder builder = new TagPrefixIndex.Builder(TAGS);
+    for (int i = 0; i < TAGS; i++) {
+      builder.add(titles[i], counts[i]);
+    }
+    TagPrefixIndex index = builder.build();
+    builder = null;
+    System.gc();
+    System.out.printf("%d titles, %.1f MB%n", index.size(), (usedMemory() - before) / 1048576.0);
+
+    final Map<String, Long> expected = new HashMap<>();
+    for (int i = 0; i < TAGS; i++) {
+      expected.merge(titles[i], counts[i], Math::max);
+    }
+    for (int i = 0; i < UPDATES; i++) {
+      if (random.nextBoolean()) {
+        final String title = titles[random.nextInt(TAGS)] + (char) ('a' + random.nextInt(26));
+        final long count = random.nextInt(1_000_000);
+        index = index.withTags(Collections.singletonMap(title, count));
+        expected.put(title, count);
+      } else {
+        final String title = titles[random.nextInt(TAGS)];
+        index = index.withoutTags(Collections.singletonList(title));
+        expected.remove(title);
+      }
+    }
+    final String[] prefixes = new String[PREFIXES];
+    for (int i = 0; i < PREFIXES; i++) {
+      final String title = titles[random.nextInt(TAGS)];
+      prefixes[i] = title.substring(0, 1 + random.nextInt(Math.min(MAX_PREFIX_LENGTH, title.length())));
+    }
+    int mismatches = 0;
+    for (final String prefix : prefixes) {
+      if (!index.find(prefix, LIMIT).equals(naiveFind(expected, prefix))) {
+        mismatches++;
+      }
+    }
+    System.out.printf("%d titles after %d updates, %d of %d prefixes mismatch naive scan%n",
+        index.size(), UPDATES, mismatches, PREFIXES);
+
+    for (int length = 1; length <= MAX_PREFIX_LENGTH; length++) {
+      final List<String> samePrefixes = new ArrayList<>();
+      for (final String prefix : prefixes) {
+        if (prefix.length() == length) {
+          samePrefixes.add(prefix);
+        }
+      }
+      for (final String prefix : samePrefixes) {
+        index.find(prefix, LIMIT);
+      }
+      final long start = System.nanoTime();
+      for (int round = 0; round < ROUNDS; round++) {
+        for (final String prefix : samePrefixes) {
+          index.find(prefix, LIMIT);
+        }
+      }
+      System.out.printf("prefix length %d: %.1f us per query%n",
+          length, (System.nanoTime() - start) / 1e3 / (ROUNDS * samePrefixes.size()));
+    }
+    final long start = System.nanoTime();
+    for (int i = 0; i < UPDATES; i++) {
+      index = index.withTags(Collections.singletonMap("zz" + i, 5L));
+    }
+    System.out.printf("update: %.1f us%n", (System.nanoTime() - start) / 1e3 / UPDATES);
+  }
+
+  private static List<TagCompletion> naiveFind(final Map<String, Long> titles, final String prefix) {
+    final List<TagCompletion> result = new ArrayList<>();
+    titles.forEach((title, count) -> {
+      if (title.startsWith(prefix)) {
+        result.add(new TagCompletion(title, count));
+      }
+    });
+    result.sort((first, second) -> first.getCount().equals(second.getCount())
+        ? first.getTitle().compareTo(second.getTitle())
+        : second.getCount().compareTo(first.getCount()));
+    return result.subList(0, Math.min(LIMIT, result.size()));
+  }
+
+  private static String randomTitle(final Random random, final int length) {
+    final StringBuilder title = new StringBuilder(length);
+    for (int i = 0; i < length; i++) {
+      title.append((char) ('a' + (int) (Math.abs(random.nextGaussian()) * 6) % 26));
+    }
+    return title.toString();
+  }
+
+  private static long usedMemory() {
+    final Runtime runtime = Runtime.getRuntime();
+    return runtime.totalMemory() - runtime.freeMemory();
+  }
+}
@@ -0,0 +1,111 @@
+/*
+ * Copyright (c) 2018 Stanislav Myachenkov
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+
+package org.mytoptag.tag;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+import org.mytoptag.model.dto.TagCompletion;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+
+/**
+ * {@link TagPrefixIndex} order of titles with equal counts in base and delta.
+ */
+public class TagPrefixIndexTest {
+
+  @Test
+  public void deltaTitleWinsTieWithLaterBaseTitle() {
+    final TagPrefixIndex index = new TagPrefixIndex.Builder(2)
+        .add("travelc", 0L)
+        .add("traveld", 0L)
+        .build()
+        .withTags(Collections.singletonMap("travela", 0L));
+    assertEquals(
+        Arrays.asList(new TagCompletion("travela", 0L), new TagCompletion("travelc", 0L)),
+        index.find("travel", 2)
+    );
+  }
+
+  @Test
+  public void findMatchesNaiveScanWithEqualCounts() {
+    final Random random = new Random(3);
+    final Map<String, Long> expected = new HashMap<>();
+    final TagPrefixIndex.Builder builder = new TagPrefixIndex.Builder(2000);
+    for (int i = 0; i < 2000; i++) {
+      final String title = title(random);
+      final long count = random.nextInt(3);
+      builder.add(title, count);
+      expected.merge(title, count, Math::max);
+    }
+    TagPrefixIndex index = builder.build();
+    for (int i = 0; i < 300; i++) {
+      final String title = title(random);
+      if (random.nextInt(4) == 0) {
+        index = index.withoutTags(Collections.singletonList(title));
+        expected.remove(title);
+      } else {
+        final long count = random.nextInt(3);
+        index = index.withTags(Collections.singletonMap(title, count));
+        expected.put(title, count);
+      }
+      for (final String prefix : Arrays.asList("a", "b", "ab", title.substring(0, 2))) {
+        for (final int limit : new int[] {1, 3, 10}) {
+          assertEquals(prefix + " " + limit, naiveFind(expected, prefix, limit), index.find(prefix, limit));
+        }
+      }
+    }
+  }
+
+  private static List<TagCompletion> naiveFind(final Map<String, Long> titles, final String prefix,
+                                               final int limit) {
+    final List<TagCompletion> result = new ArrayList<>();
+    titles.forEach((title, count) -> {
+      if (title.startsWith(prefix)) {
+        result.add(new TagCompletion(title, count));
+      }
+    });
+    result.sort((first, second) -> first.getCount().equals(second.getCount())
+        ? first.getTitle().compareTo(second.getTitle())
+        : second.getCount().compareTo(first.getCount()));
+    return result.subList(0, Math.min(limit, result.size()));
+  }
+
+  private static String title(final Random random) {
+    final StringBuilder title = new StringBuilder();
+    final int length = 2 + random.nextInt(4);
+    for (int i = 0; i < length; i++) {
+      title.append((char) ('a' + random.nextInt(4)));
+    }
+    return title.toString();
+  }
+}